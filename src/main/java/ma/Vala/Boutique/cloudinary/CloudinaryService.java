@@ -5,6 +5,7 @@ import com.cloudinary.utils.ObjectUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.Map;
@@ -60,6 +61,24 @@ public class CloudinaryService {
         }
     }
 
+    // Upload depuis un fichier sur disque (import en masse, images extraites d'une archive)
+    public Map<String, Object> uploadFile(File file, String folder) throws IOException {
+        try {
+            return cloudinary.uploader().upload(file, ObjectUtils.asMap(
+                    "folder", folder,
+                    "resource_type", "image",
+                    "quality", "auto",
+                    "fetch_format", "auto",
+                    "use_filename", false,
+                    "unique_filename", true,
+                    "overwrite", false
+            ));
+        } catch (Exception e) {
+            System.err.println("Cloudinary upload error (" + file.getName() + "): " + e.getMessage());
+            throw new IOException("Échec de l'upload vers Cloudinary: " + e.getMessage(), e);
+        }
+    }
+
     public void deleteFile(String publicId) throws IOException {
         if (publicId != null && !publicId.trim().isEmpty()) {
             try {
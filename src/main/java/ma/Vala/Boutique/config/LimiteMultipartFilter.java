@@ -0,0 +1,59 @@
+package ma.Vala.Boutique.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Limite de taille des envois multipart, par endpoint.
+ * La limite du servlet (spring.servlet.multipart.*) est celle de l'import en masse, seul endpoint
+ * qui reçoit une archive ; toutes les autres requêtes multipart sont refusées au-delà de
+ * app.multipart.taille-max, avant que leur contenu ne soit lu.
+ */
+@Component
+public class LimiteMultipartFilter extends OncePerRequestFilter {
+
+    private static final String CHEMIN_IMPORT = "/api/produits/import";
+
+    private final long tailleMax;
+    private final long tailleMaxImport;
+
+    public LimiteMultipartFilter(@Value("${app.multipart.taille-max:10MB}") DataSize tailleMax,
+                                 @Value("${app.import.taille-max:512MB}") DataSize tailleMaxImport) {
+        this.tailleMax = tailleMax.toBytes();
+        this.tailleMaxImport = tailleMaxImport.toBytes();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null || !contentType.toLowerCase().startsWith("multipart/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long limite = CHEMIN_IMPORT.equals(request.getRequestURI()) ? tailleMaxImport : tailleMax;
+        long taille = request.getContentLengthLong();
+
+        // Sans Content-Length (envoi par morceaux), la taille ne peut pas être vérifiée avant lecture
+        if (taille < 0) {
+            response.sendError(HttpStatus.LENGTH_REQUIRED.value(), "Content-Length requis pour un envoi de fichier");
+            return;
+        }
+        if (taille > limite) {
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "Envoi trop volumineux (maximum " + DataSize.ofBytes(limite).toMegabytes() + "MB)");
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
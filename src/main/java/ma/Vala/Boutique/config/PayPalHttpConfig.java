@@ -0,0 +1,99 @@
+package ma.Vala.Boutique.config;
+
+import ma.Vala.Boutique.service.PoolConnexionsPayPal;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Client HTTP des appels PayPal : pool de connexions persistantes (keep-alive) vers l'API,
+ * délais de connexion, de réponse et d'attente d'une connexion libre, et un seul contexte TLS
+ * dont le cache de sessions permet de reprendre les sessions lors des nouvelles connexions.
+ * Une réponse lente de PayPal ne peut plus bloquer indéfiniment un thread Tomcat.
+ */
+@Configuration
+public class PayPalHttpConfig {
+
+    @Value("${app.paypal.http.pool-max:50}")
+    private int poolMax;
+
+    @Value("${app.paypal.http.connexion-timeout-ms:3000}")
+    private long connexionTimeoutMs;
+
+    @Value("${app.paypal.http.reponse-timeout-ms:15000}")
+    private long reponseTimeoutMs;
+
+    // Attente maximale d'une connexion libre quand le pool est saturé
+    @Value("${app.paypal.http.attente-pool-ms:2000}")
+    private long attentePoolMs;
+
+    @Value("${app.paypal.http.duree-vie-connexion-secondes:300}")
+    private long dureeVieConnexionSecondes;
+
+    @Value("${app.paypal.http.inactivite-max-secondes:30}")
+    private long inactiviteMaxSecondes;
+
+    @Value("${app.paypal.http.tls.sessions-timeout-secondes:3600}")
+    private int sessionsTlsTimeoutSecondes;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager payPalConnectionManager() {
+        SSLContext sslContext = SSLContexts.createSystemDefault();
+        sslContext.getClientSessionContext().setSessionTimeout(sessionsTlsTimeoutSecondes);
+
+        // Toutes les requêtes vont vers le même hôte PayPal : une seule route, qui peut utiliser tout le pool
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setTlsSocketStrategy(new DefaultClientTlsStrategy(sslContext))
+                .setMaxConnTotal(poolMax)
+                .setMaxConnPerRoute(poolMax)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connexionTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(reponseTimeoutMs))
+                        .setTimeToLive(TimeValue.ofSeconds(dureeVieConnexionSecondes))
+                        // Connexion restée inactive : vérifiée avant réutilisation (fermée côté PayPal ?)
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean
+    public PoolConnexionsPayPal poolConnexionsPayPal(PoolingHttpClientConnectionManager payPalConnectionManager) {
+        return new PoolConnexionsPayPal(payPalConnectionManager);
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient payPalHttpClient(PoolingHttpClientConnectionManager payPalConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(payPalConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(attentePoolMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(reponseTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(inactiviteMaxSecondes))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate payPalRestTemplate(CloseableHttpClient payPalHttpClient, PoolConnexionsPayPal poolConnexionsPayPal) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(payPalHttpClient));
+        restTemplate.getInterceptors().add(poolConnexionsPayPal);
+        return restTemplate;
+    }
+}
@@ -0,0 +1,10 @@
+package ma.Vala.Boutique.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Active les tâches @Scheduled (cycle de vie des réservations...)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
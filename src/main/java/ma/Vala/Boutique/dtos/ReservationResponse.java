@@ -0,0 +1,133 @@
+package ma.Vala.Boutique.dtos;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.entities.Reservation;
+
+import java.io.IOException;
+
+/**
+ * Réponse JSON d'une réservation (mêmes champs que l'ancienne Map construite à la main).
+ * Immuable, remplie par accès directs aux getters, et écrite par un sérialiseur dédié
+ * qui émet les champs un à un : aucune réflexion ni HashMap par réservation.
+ */
+@JsonSerialize(using = ReservationResponse.Writer.class)
+public record ReservationResponse(
+        Long id,
+        String dateDepart,
+        String dateRetour,
+        String nom,
+        String prenom,
+        String telephone,
+        String email,
+        String lieuPrise,
+        String lieuRetour,
+        Double prixTotal,
+        Integer nombreJours,
+        String statut,
+        String statutLabel,
+        String dateCreation,
+        String transactionId,
+        String paymentMethod,
+        String paymentStatus,
+        ProduitResume produit
+) {
+
+    public record ProduitResume(Long id, String nom, String marque, String categorie, String imageUrl) {
+
+        public static ProduitResume from(Produit produit) {
+            return new ProduitResume(produit.getId(), produit.getNom(), produit.getMarque(),
+                    produit.getCategorie(), produit.getImageUrl());
+        }
+    }
+
+    public static ReservationResponse from(Reservation reservation) {
+        return from(reservation, ProduitResume.from(reservation.getProduit()));
+    }
+
+    public static ReservationResponse from(Reservation reservation, ProduitResume produit) {
+        return new ReservationResponse(
+                reservation.getId(),
+                reservation.getDateDepart().toString(),
+                reservation.getDateRetour().toString(),
+                reservation.getNom(),
+                reservation.getPrenom(),
+                reservation.getTelephone(),
+                reservation.getEmail(),
+                reservation.getLieuPrise(),
+                reservation.getLieuRetour(),
+                reservation.getPrixTotal(),
+                reservation.getNombreJours(),
+                reservation.getStatut().name(),
+                reservation.getStatut().getLabel(),
+                reservation.getDateCreation().toString(),
+                reservation.getTransactionId(),
+                reservation.getPaymentMethod(),
+                reservation.getPaymentStatus(),
+                produit
+        );
+    }
+
+    // Sérialiseur écrit à la main : l'ordre et les noms des champs sont fixés à la compilation
+    public static class Writer extends StdSerializer<ReservationResponse> {
+
+        public Writer() {
+            super(ReservationResponse.class);
+        }
+
+        @Override
+        public void serialize(ReservationResponse r, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            writeNumber(gen, "id", r.id());
+            gen.writeStringField("dateDepart", r.dateDepart());
+            gen.writeStringField("dateRetour", r.dateRetour());
+            gen.writeStringField("nom", r.nom());
+            gen.writeStringField("prenom", r.prenom());
+            gen.writeStringField("telephone", r.telephone());
+            gen.writeStringField("email", r.email());
+            gen.writeStringField("lieuPrise", r.lieuPrise());
+            gen.writeStringField("lieuRetour", r.lieuRetour());
+            if (r.prixTotal() != null) {
+                gen.writeNumberField("prixTotal", r.prixTotal());
+            } else {
+                gen.writeNullField("prixTotal");
+            }
+            if (r.nombreJours() != null) {
+                gen.writeNumberField("nombreJours", r.nombreJours());
+            } else {
+                gen.writeNullField("nombreJours");
+            }
+            gen.writeStringField("statut", r.statut());
+            gen.writeStringField("statutLabel", r.statutLabel());
+            gen.writeStringField("dateCreation", r.dateCreation());
+            gen.writeStringField("transactionId", r.transactionId());
+            gen.writeStringField("paymentMethod", r.paymentMethod());
+            gen.writeStringField("paymentStatus", r.paymentStatus());
+
+            ProduitResume p = r.produit();
+            if (p == null) {
+                gen.writeNullField("produit");
+            } else {
+                gen.writeObjectFieldStart("produit");
+                writeNumber(gen, "id", p.id());
+                gen.writeStringField("nom", p.nom());
+                gen.writeStringField("marque", p.marque());
+                gen.writeStringField("categorie", p.categorie());
+                gen.writeStringField("imageUrl", p.imageUrl());
+                gen.writeEndObject();
+            }
+            gen.writeEndObject();
+        }
+
+        private static void writeNumber(JsonGenerator gen, String champ, Long valeur) throws IOException {
+            if (valeur != null) {
+                gen.writeNumberField(champ, valeur);
+            } else {
+                gen.writeNullField(champ);
+            }
+        }
+    }
+}
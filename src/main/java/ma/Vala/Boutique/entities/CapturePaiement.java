@@ -0,0 +1,45 @@
+package ma.Vala.Boutique.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Capture d'une commande PayPal, une ligne par commande : réservée (EN_COURS) par l'instance
+ * qui l'exécute jusqu'à bailJusqua, puis TERMINEE avec la réponse renvoyée au client,
+ * rejouée telle quelle pour les appels suivants (voir CaptureIdempotenteService).
+ */
+@Entity
+@Table(name = "capture_paiement")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CapturePaiement {
+
+    @Id
+    @Column(name = "order_id", length = 64)
+    private String orderId;
+
+    // En-tête Idempotency-Key du premier appel (facultatif), propre à une seule commande
+    @Column(name = "cle_idempotence", unique = true)
+    private String cleIdempotence;
+
+    @Column(nullable = false, length = 16)
+    private String statut;
+
+    @Column(length = 100)
+    private String proprietaire;
+
+    @Column(name = "bail_jusqua")
+    private LocalDateTime bailJusqua;
+
+    @Column(name = "http_status")
+    private Integer httpStatus;
+
+    @Column(columnDefinition = "TEXT")
+    private String reponse;
+
+    @Column(name = "date_creation", nullable = false)
+    private LocalDateTime dateCreation;
+}
@@ -0,0 +1,39 @@
+package ma.Vala.Boutique.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Ligne du registre d'inventaire : nombre de véhicules d'un produit réservés pour un jour donné.
+ * Mise à jour uniquement par des UPDATE conditionnels (voir InventaireService),
+ * ce qui garantit qu'on ne dépasse jamais Produit.quantite, même avec plusieurs instances.
+ */
+@Entity
+@Table(name = "inventaire_jour")
+@IdClass(InventaireJour.Cle.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventaireJour {
+
+    @Id
+    @Column(name = "produit_id")
+    private Long produitId;
+
+    @Id
+    private LocalDate jour;
+
+    @Column(nullable = false)
+    private int reserves;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Cle implements Serializable {
+        private Long produitId;
+        private LocalDate jour;
+    }
+}
@@ -15,7 +15,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 
 public class Produit {
 
@@ -49,10 +49,24 @@ public class Produit {
     @Size(max = 50, message = "La marque ne doit pas dépasser 50 caractères")
     private String marque;
 
-    @Column(name = "image_url")
+    // Colonnes d'image écrites à l'insertion puis uniquement par les UPDATE ciblés du dépôt
+    // (updateImage, updateImageStatut) : la sauvegarde d'un produit lu avant la fin d'un upload
+    // asynchrone ne peut pas écraser l'image que celui-ci vient d'enregistrer
+    @Column(name = "image_url", updatable = false)
     private String imageUrl;
 
-    @Column(name = "image_public_id")
+    @Column(name = "image_public_id", updatable = false)
     private String imagePublicId;
 
+    // État de l'upload de l'image (null pour les produits antérieurs : image déjà en place)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "image_statut", updatable = false)
+    private StatutImage imageStatut;
+
+    public enum StatutImage {
+        PENDING,
+        READY,
+        FAILED
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package ma.Vala.Boutique.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Règle de tarification appliquée au prix journalier d'un véhicule (voir TarificationService).
+ * Portée : un produit (produitId), une catégorie (categorie), ou toute la flotte si les deux sont vides.
+ * Le pourcentage est une majoration s'il est positif, une remise s'il est négatif.
+ */
+@Entity
+@Table(name = "regles_tarif")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RegleTarif {
+
+    public enum TypeRegle {
+        // Jours compris entre dateDebut et dateFin (incluses)
+        SAISON,
+        // Samedis et dimanches
+        WEEKEND,
+        // Location d'au moins dureeMin jours, appliquée au sous-total
+        LONGUE_DUREE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private TypeRegle type;
+
+    private String libelle;
+
+    @Column(name = "produit_id")
+    private Long produitId;
+
+    private String categorie;
+
+    @Column(name = "date_debut")
+    private LocalDate dateDebut;
+
+    @Column(name = "date_fin")
+    private LocalDate dateFin;
+
+    @Column(name = "duree_min")
+    private Integer dureeMin;
+
+    @Column(nullable = false)
+    private double pourcentage;
+
+    @Builder.Default
+    @Column(nullable = false)
+    private boolean actif = true;
+}
@@ -7,7 +7,13 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "reservations")
+@Table(name = "reservations", indexes = {
+        @Index(name = "idx_reservations_date_creation", columnList = "date_creation, id"),
+        // Créé aussi par la migration V2 sur les bases existantes
+        @Index(name = "idx_reservations_disponibilite", columnList = "produit_id, statut, date_depart, date_retour"),
+        // Créé aussi par la migration V3 sur les bases existantes
+        @Index(name = "idx_reservations_client", columnList = "email, date_creation, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -104,5 +110,20 @@ public class Reservation {
         public String getLabel() {
             return label;
         }
+
+        // Une réservation active immobilise un véhicule sur sa période
+        public boolean isActive() {
+            return this == EN_ATTENTE || this == CONFIRMEE || this == EN_COURS;
+        }
+
+        // Transitions autorisées par le changement de statut en masse
+        public boolean peutPasserA(StatutReservation nouveau) {
+            return switch (this) {
+                case EN_ATTENTE -> nouveau == CONFIRMEE || nouveau == ANNULEE;
+                case CONFIRMEE -> nouveau == EN_COURS || nouveau == ANNULEE;
+                case EN_COURS -> nouveau == TERMINEE;
+                case TERMINEE, ANNULEE -> false;
+            };
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package ma.Vala.Boutique.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import ma.Vala.Boutique.entities.Reservation.StatutReservation;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Agrégat des réservations par (jour de départ, produit, statut) : nombre, revenu et jours loués.
+ * Tenu à jour de façon incrémentale à chaque écriture de réservation (voir StatistiquesReservationService),
+ * il sert les statistiques du tableau de bord sans parcourir la table des réservations.
+ */
+@Entity
+@Table(name = "stats_reservation_jour")
+@IdClass(StatistiqueReservationJour.Cle.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatistiqueReservationJour {
+
+    @Id
+    private LocalDate jour;
+
+    @Id
+    @Column(name = "produit_id")
+    private Long produitId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private StatutReservation statut;
+
+    @Column(nullable = false)
+    private long nombre;
+
+    @Column(nullable = false)
+    private double revenu;
+
+    @Column(name = "jours_loues", nullable = false)
+    private long joursLoues;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Cle implements Serializable {
+        private LocalDate jour;
+        private Long produitId;
+        private StatutReservation statut;
+    }
+}
@@ -0,0 +1,28 @@
+package ma.Vala.Boutique.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bail d'exécution d'une tâche planifiée : l'instance qui l'obtient est seule à exécuter
+ * la tâche jusqu'à verrouilleJusqua (voir VerrouTacheService).
+ */
+@Entity
+@Table(name = "verrou_tache")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VerrouTache {
+
+    @Id
+    @Column(length = 64)
+    private String nom;
+
+    @Column(name = "verrouille_jusqua", nullable = false)
+    private LocalDateTime verrouilleJusqua;
+
+    @Column(length = 100)
+    private String proprietaire;
+}
@@ -0,0 +1,27 @@
+package ma.Vala.Boutique.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Version du catalogue, une seule ligne (id 1) incrémentée à chaque modification de produit,
+ * avec l'instant de cette modification : toutes les instances en tirent le même ETag et le même
+ * Last-Modified (voir CatalogueVersionService).
+ */
+@Entity
+@Table(name = "version_catalogue")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionCatalogue {
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private long version;
+
+    // Millisecondes depuis l'epoch
+    @Column(name = "date_modification", nullable = false)
+    private long dateModification;
+}
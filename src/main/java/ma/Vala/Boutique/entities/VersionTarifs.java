@@ -0,0 +1,23 @@
+package ma.Vala.Boutique.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Version des règles de tarification, une seule ligne (id 1) incrémentée à chaque modification
+ * de règle : chaque instance la compare à celle de ses règles en mémoire avant de servir
+ * un devis en cache (voir TarificationService).
+ */
+@Entity
+@Table(name = "version_tarifs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionTarifs {
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private long version;
+}
@@ -0,0 +1,26 @@
+package ma.Vala.Boutique.events;
+
+import ma.Vala.Boutique.entities.Produit;
+
+/**
+ * Événement publié après chaque création, modification ou suppression d'un produit.
+ * Les structures en mémoire du catalogue (index de recherche, caches...) l'écoutent
+ * pour rester synchronisées avec la table produits.
+ *
+ * @param produitId identifiant du produit concerné
+ * @param produit   état sauvegardé du produit, ou null si le produit a été supprimé
+ */
+public record ProduitModifieEvent(Long produitId, Produit produit) {
+
+    public static ProduitModifieEvent sauvegarde(Produit produit) {
+        return new ProduitModifieEvent(produit.getId(), produit);
+    }
+
+    public static ProduitModifieEvent suppression(Long produitId) {
+        return new ProduitModifieEvent(produitId, null);
+    }
+
+    public boolean isSuppression() {
+        return produit == null;
+    }
+}
@@ -0,0 +1,36 @@
+package ma.Vala.Boutique.events;
+
+import ma.Vala.Boutique.entities.Reservation;
+import ma.Vala.Boutique.entities.Reservation.StatutReservation;
+
+import java.time.LocalDate;
+
+/**
+ * Événement publié après chaque création, changement de statut ou suppression d'une réservation.
+ * Le calendrier de disponibilité en mémoire l'écoute pour rester synchronisé avec la table reservations,
+ * le résumé par client pour invalider son cache.
+ *
+ * @param reservationId identifiant de la réservation concernée
+ * @param produitId     véhicule réservé
+ * @param email         email du client
+ * @param statut        statut sauvegardé, ou null si la réservation a été supprimée
+ */
+public record ReservationModifieeEvent(Long reservationId, Long produitId,
+                                       LocalDate dateDepart, LocalDate dateRetour,
+                                       String email, StatutReservation statut) {
+
+    public static ReservationModifieeEvent sauvegarde(Reservation reservation) {
+        return new ReservationModifieeEvent(reservation.getId(), reservation.getProduit().getId(),
+                reservation.getDateDepart(), reservation.getDateRetour(), reservation.getEmail(),
+                reservation.getStatut());
+    }
+
+    public static ReservationModifieeEvent suppression(Reservation reservation) {
+        return new ReservationModifieeEvent(reservation.getId(), reservation.getProduit().getId(),
+                reservation.getDateDepart(), reservation.getDateRetour(), reservation.getEmail(), null);
+    }
+
+    public boolean isSuppression() {
+        return statut == null;
+    }
+}
@@ -0,0 +1,60 @@
+package ma.Vala.Boutique.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Migration Flyway qui ajoute un index à une table gérée par Hibernate.
+ * Flyway passe avant Hibernate : sur une base neuve la table n'existe pas encore,
+ * la migration ne fait alors rien et Hibernate crée table et index (déclaré dans @Table).
+ * Sur une base existante, l'index est créé s'il manque.
+ */
+public abstract class AjoutIndexMigration extends BaseJavaMigration {
+
+    private final String table;
+    private final String index;
+    private final String colonnes;
+
+    protected AjoutIndexMigration(String table, String index, String colonnes) {
+        this.table = table;
+        this.index = index;
+        this.colonnes = colonnes;
+    }
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connexion = context.getConnection();
+        DatabaseMetaData metaData = connexion.getMetaData();
+
+        try (ResultSet tables = metaData.getTables(connexion.getCatalog(), null, table, new String[]{"TABLE"})) {
+            if (!tables.next()) {
+                System.out.println("Migration " + index + " : table " + table + " absente, créée par Hibernate");
+                return;
+            }
+        }
+        if (indexExiste(connexion, metaData)) {
+            return;
+        }
+        try (Statement statement = connexion.createStatement()) {
+            statement.execute("CREATE INDEX " + index + " ON " + table + " (" + colonnes + ")");
+        }
+        System.out.println("Migration : index " + index + " créé sur " + table + " (" + colonnes + ")");
+    }
+
+    private boolean indexExiste(Connection connexion, DatabaseMetaData metaData) throws SQLException {
+        try (ResultSet indexes = metaData.getIndexInfo(connexion.getCatalog(), null, table, false, true)) {
+            while (indexes.next()) {
+                if (index.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,13 @@
+package ma.Vala.Boutique.migration;
+
+/**
+ * Index des requêtes de chevauchement (disponibilité, conflits) :
+ * égalité sur produit_id, liste de statuts, puis plage sur date_depart ; date_retour est
+ * lue dans l'index sans accès à la ligne.
+ */
+public class V2__IndexDisponibiliteReservations extends AjoutIndexMigration {
+
+    public V2__IndexDisponibiliteReservations() {
+        super("reservations", "idx_reservations_disponibilite", "produit_id, statut, date_depart, date_retour");
+    }
+}
@@ -0,0 +1,12 @@
+package ma.Vala.Boutique.migration;
+
+/**
+ * Index de l'historique d'un client : égalité sur email, puis parcours dans l'ordre
+ * date_creation DESC, id DESC (pagination par curseur) sans tri.
+ */
+public class V3__IndexHistoriqueClient extends AjoutIndexMigration {
+
+    public V3__IndexHistoriqueClient() {
+        super("reservations", "idx_reservations_client", "email, date_creation, id");
+    }
+}
@@ -0,0 +1,26 @@
+package ma.Vala.Boutique.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Statement;
+
+/**
+ * Tables des comptes Spring Security (JdbcUserDetailsManager), créées auparavant par schema.sql
+ * après Hibernate. Elles ne dépendent d'aucune table gérée par Hibernate : Flyway les crée
+ * avant le démarrage de JPA, et les bases qui les ont déjà ne sont pas modifiées.
+ */
+public class V4__TablesSecurite extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement statement = context.getConnection().createStatement()) {
+            statement.execute("create table if not exists users(username varchar(50) not null primary key," +
+                    "password varchar(500) not null,enabled boolean not null)");
+            statement.execute("create table if not exists authorities (username varchar(50) not null," +
+                    "authority varchar(50) not null," +
+                    "constraint fk_authorities_users foreign key(username) references users(username))");
+            statement.execute("create unique index if not exists ix_auth_username on authorities (username,authority)");
+        }
+    }
+}
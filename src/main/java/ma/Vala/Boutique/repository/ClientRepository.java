@@ -1,9 +1,14 @@
 package ma.Vala.Boutique.repository;
 
 import ma.Vala.Boutique.entities.Client;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 public interface ClientRepository extends JpaRepository<Client, Long>
 {
     Client findByCni(String cni);
+
+    // Lecture par lots pour l'export en flux
+    Slice<Client> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
 }
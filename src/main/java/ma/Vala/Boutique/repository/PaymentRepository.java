@@ -3,6 +3,9 @@ package ma.Vala.Boutique.repository;
 import ma.Vala.Boutique.entities.Payment;
 import ma.Vala.Boutique.entities.PaymentStatus;
 import ma.Vala.Boutique.entities.PaymentType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
@@ -14,6 +17,10 @@ public interface PaymentRepository extends JpaRepository<Payment , Long> {
 
     List<Payment> findByTypePaiement(PaymentType typePaiement);
 
+    // Lecture par lots pour l'export en flux, client et produit chargés dans la même requête
+    @EntityGraph(attributePaths = {"client", "produit"})
+    Slice<Payment> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
 
 
 }
@@ -3,10 +3,15 @@ package ma.Vala.Boutique.repository;
 import ma.Vala.Boutique.entities.Produit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @Repository
 public interface ProduitRepository extends JpaRepository<Produit, Long> {
@@ -27,4 +32,29 @@ public interface ProduitRepository extends JpaRepository<Produit, Long> {
             "LOWER(p.marque) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
             "LOWER(p.categorie) LIKE LOWER(CONCAT('%', :keyword, '%'))")
     Page<Produit> findByKeywordInAllFields(@Param("keyword") String keyword, Pageable pageable);
+
+    // Pagination sans COUNT (défilement infini)
+    Slice<Produit> findSliceBy(Pageable pageable);
+
+    // Pagination par curseur (keyset) : reprend après le dernier id reçu, sans OFFSET
+    Slice<Produit> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    // Mise à jour ciblée des colonnes d'image, sans écraser une modification concurrente des autres champs
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Produit p SET p.imageUrl = :imageUrl, p.imagePublicId = :imagePublicId, " +
+            "p.imageStatut = :imageStatut WHERE p.id = :id")
+    int updateImage(@Param("id") Long id,
+                    @Param("imageUrl") String imageUrl,
+                    @Param("imagePublicId") String imagePublicId,
+                    @Param("imageStatut") Produit.StatutImage imageStatut);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Produit p SET p.imageStatut = :imageStatut WHERE p.id = :id")
+    int updateImageStatut(@Param("id") Long id, @Param("imageStatut") Produit.StatutImage imageStatut);
+
+    // Colonnes d'image telles qu'en base (url, public id, statut), sans passer par l'entité en mémoire
+    @Query("SELECT p.imageUrl, p.imagePublicId, p.imageStatut FROM Produit p WHERE p.id = :id")
+    List<Object[]> findImage(@Param("id") Long id);
 }
\ No newline at end of file
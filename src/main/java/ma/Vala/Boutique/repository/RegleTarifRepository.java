@@ -0,0 +1,13 @@
+package ma.Vala.Boutique.repository;
+
+import ma.Vala.Boutique.entities.RegleTarif;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RegleTarifRepository extends JpaRepository<RegleTarif, Long> {
+
+    List<RegleTarif> findByActifTrue();
+}
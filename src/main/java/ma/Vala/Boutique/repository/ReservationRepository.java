@@ -4,7 +4,12 @@ import ma.Vala.Boutique.entities.Reservation;
 import ma.Vala.Boutique.entities.Reservation.StatutReservation;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -15,22 +20,79 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+public interface ReservationRepository extends JpaRepository<Reservation, Long>,
+        JpaSpecificationExecutor<Reservation> {
 
     // ==========================
     // 🔹 Recherches simples
     // ==========================
+    // Les listes chargent le produit dans la même requête (jointure) : les réponses lisent
+    // son nom, sa marque et son image pour chaque ligne, sans une requête de plus par réservation.
 
+    @EntityGraph(attributePaths = "produit")
     Page<Reservation> findByStatut(StatutReservation statut, Pageable pageable);
+    @EntityGraph(attributePaths = "produit")
     List<Reservation> findByStatut(StatutReservation statut);
 
+    @EntityGraph(attributePaths = "produit")
     Page<Reservation> findByEmailContainingIgnoreCase(String email, Pageable pageable);
+    @EntityGraph(attributePaths = "produit")
     List<Reservation> findByEmailOrderByDateCreationDesc(String email);
+    @EntityGraph(attributePaths = "produit")
     Page<Reservation> findByEmailOrderByDateCreationDesc(String email, Pageable pageable);
 
+    @EntityGraph(attributePaths = "produit")
     Page<Reservation> findByProduitId(Long produitId, Pageable pageable);
+    @EntityGraph(attributePaths = "produit")
     List<Reservation> findByProduitIdOrderByDateDepartAsc(Long produitId);
 
+    // Recherche admin multi-critères (RechercheReservationService)
+    @Override
+    @EntityGraph(attributePaths = "produit")
+    Page<Reservation> findAll(Specification<Reservation> specification, Pageable pageable);
+
+    // ==========================
+    // 🔹 Pagination sans COUNT / par curseur
+    // ==========================
+
+    @EntityGraph(attributePaths = "produit")
+    Slice<Reservation> findSliceBy(Pageable pageable);
+    @EntityGraph(attributePaths = "produit")
+    Slice<Reservation> findSliceByEmailContainingIgnoreCase(String email, Pageable pageable);
+
+    // Curseur (dateCreation, id) : page suivante dans l'ordre dateCreation DESC, id DESC
+    @EntityGraph(attributePaths = "produit")
+    @Query("SELECT r FROM Reservation r WHERE r.dateCreation < :dateCreation " +
+            "OR (r.dateCreation = :dateCreation AND r.id < :id) " +
+            "ORDER BY r.dateCreation DESC, r.id DESC")
+    Slice<Reservation> findApresCurseur(@Param("dateCreation") LocalDateTime dateCreation,
+                                        @Param("id") Long id,
+                                        Pageable pageable);
+
+    @EntityGraph(attributePaths = "produit")
+    @Query("SELECT r FROM Reservation r WHERE LOWER(r.email) LIKE LOWER(CONCAT('%', :email, '%')) " +
+            "AND (r.dateCreation < :dateCreation OR (r.dateCreation = :dateCreation AND r.id < :id)) " +
+            "ORDER BY r.dateCreation DESC, r.id DESC")
+    Slice<Reservation> findByEmailApresCurseur(@Param("email") String email,
+                                               @Param("dateCreation") LocalDateTime dateCreation,
+                                               @Param("id") Long id,
+                                               Pageable pageable);
+
+    // Historique d'un client, plus récentes d'abord (index email, date_creation, id)
+    @EntityGraph(attributePaths = "produit")
+    @Query("SELECT r FROM Reservation r WHERE r.email = :email " +
+            "ORDER BY r.dateCreation DESC, r.id DESC")
+    Slice<Reservation> findHistoriqueClient(@Param("email") String email, Pageable pageable);
+
+    @EntityGraph(attributePaths = "produit")
+    @Query("SELECT r FROM Reservation r WHERE r.email = :email " +
+            "AND (r.dateCreation < :dateCreation OR (r.dateCreation = :dateCreation AND r.id < :id)) " +
+            "ORDER BY r.dateCreation DESC, r.id DESC")
+    Slice<Reservation> findHistoriqueClientApresCurseur(@Param("email") String email,
+                                                        @Param("dateCreation") LocalDateTime dateCreation,
+                                                        @Param("id") Long id,
+                                                        Pageable pageable);
+
     // ==========================
     // 🔹 Recherche par période
     // ==========================
@@ -48,33 +110,101 @@ public interface ReservationRepository extends JpaRepository<Reservation, Long>
     // 🔹 Disponibilité & conflits
     // ==========================
 
+    // Chevauchement de périodes : une seule forme, depart < retour' AND retour > depart',
+    // qui parcourt l'index (produit_id, statut, date_depart, date_retour) sur une seule plage
     @Query("SELECT COUNT(r) FROM Reservation r WHERE r.produit.id = :produitId " +
             "AND r.statut IN ('EN_ATTENTE', 'CONFIRMEE', 'EN_COURS') " +
-            "AND ((r.dateDepart <= :dateDepart AND r.dateRetour >= :dateDepart) " +
-            "OR (r.dateDepart <= :dateRetour AND r.dateRetour >= :dateRetour) " +
-            "OR (r.dateDepart >= :dateDepart AND r.dateRetour <= :dateRetour))")
+            "AND r.dateDepart < :dateRetour AND r.dateRetour > :dateDepart")
     Long countReservationsConflictuelles(@Param("produitId") Long produitId,
                                          @Param("dateDepart") LocalDate dateDepart,
                                          @Param("dateRetour") LocalDate dateRetour);
 
+    // Périodes des réservations actives non terminées : [id, produitId, dateDepart, dateRetour]
+    @Query("SELECT r.id, r.produit.id, r.dateDepart, r.dateRetour FROM Reservation r " +
+            "WHERE r.statut IN ('EN_ATTENTE', 'CONFIRMEE', 'EN_COURS') AND r.dateRetour >= :depuis")
+    List<Object[]> findPeriodesActives(@Param("depuis") LocalDate depuis);
+
+    // Périodes actives d'un produit chevauchant une fenêtre : [dateDepart, dateRetour]
+    @Query("SELECT r.dateDepart, r.dateRetour FROM Reservation r WHERE r.produit.id = :produitId " +
+            "AND r.statut IN ('EN_ATTENTE', 'CONFIRMEE', 'EN_COURS') " +
+            "AND r.dateDepart < :dateFin AND r.dateRetour >= :dateDebut")
+    List<Object[]> findPeriodesActivesProduit(@Param("produitId") Long produitId,
+                                              @Param("dateDebut") LocalDate dateDebut,
+                                              @Param("dateFin") LocalDate dateFin);
+
     @Query("SELECT r FROM Reservation r WHERE r.produit.id = :produitId " +
             "AND r.statut IN ('EN_ATTENTE', 'CONFIRMEE', 'EN_COURS') " +
-            "AND ((r.dateDepart < :dateRetour AND r.dateRetour > :dateDepart))")
+            "AND r.dateDepart < :dateRetour AND r.dateRetour > :dateDepart")
     List<Reservation> findConflictingReservations(@Param("produitId") Long produitId,
                                                   @Param("dateDepart") LocalDate dateDepart,
                                                   @Param("dateRetour") LocalDate dateRetour);
 
     @Query("SELECT COUNT(r) FROM Reservation r WHERE r.produit.id = :produitId " +
             "AND r.statut IN ('CONFIRMEE', 'EN_COURS') " +
-            "AND r.dateDepart <= :dateRetour AND r.dateRetour >= :dateDepart")
+            "AND r.dateDepart < :dateRetour AND r.dateRetour > :dateDepart")
     Long countConfirmedReservationsForPeriod(@Param("produitId") Long produitId,
                                              @Param("dateDepart") LocalDate dateDepart,
                                              @Param("dateRetour") LocalDate dateRetour);
 
+    // ==========================
+    // 🔹 Changements d'état conditionnels
+    // ==========================
+
+    // Ne modifie le statut que s'il vaut encore "ancien" : 0 si un autre changement est passé avant
+    @Modifying
+    @Query("UPDATE Reservation r SET r.statut = :nouveau WHERE r.id = :id AND r.statut = :ancien")
+    int updateStatut(@Param("id") Long id,
+                     @Param("ancien") StatutReservation ancien,
+                     @Param("nouveau") StatutReservation nouveau);
+
+    @Modifying
+    @Query("DELETE FROM Reservation r WHERE r.id = :id AND r.statut = :statut")
+    int deleteByIdAndStatut(@Param("id") Long id, @Param("statut") StatutReservation statut);
+
+    // Réservations déjà verrouillées et validées par l'appelant : un seul UPDATE pour tout le lot
+    @Modifying
+    @Query("UPDATE Reservation r SET r.statut = :nouveau, r.dateModification = :maintenant WHERE r.id IN :ids")
+    int updateStatutEnMasse(@Param("ids") List<Long> ids,
+                            @Param("nouveau") StatutReservation nouveau,
+                            @Param("maintenant") LocalDateTime maintenant);
+
+    // Champs de paiement seuls, tant que la réservation est en attente : une lecture périmée
+    // ne peut pas réécrire le statut d'une réservation expirée ou annulée entre-temps
+
+    // Paiement initié (la date de modification est le début du blocage), sauf capture en cours
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Reservation r SET r.transactionId = :transactionId, r.paymentMethod = :methode, " +
+            "r.paymentStatus = 'PENDING', r.dateModification = :maintenant " +
+            "WHERE r.id = :id AND r.statut = 'EN_ATTENTE' " +
+            "AND (r.paymentStatus IS NULL OR r.paymentStatus <> 'CAPTURING')")
+    int updatePaiementInitie(@Param("id") Long id,
+                             @Param("transactionId") String transactionId,
+                             @Param("methode") String methode,
+                             @Param("maintenant") LocalDateTime maintenant);
+
+    // Ne modifie le statut de paiement que s'il vaut encore un des "anciens" ; la date de modification est conservée
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Reservation r SET r.paymentStatus = :nouveau " +
+            "WHERE r.id = :id AND r.statut = 'EN_ATTENTE' AND r.paymentStatus IN :anciens")
+    int updatePaymentStatus(@Param("id") Long id,
+                            @Param("anciens") List<String> anciens,
+                            @Param("nouveau") String nouveau);
+
+    // Capture abandonnée : le paiement redevient en attente, avec un nouveau délai à partir de maintenant
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Reservation r SET r.paymentStatus = 'PENDING', r.dateModification = :maintenant " +
+            "WHERE r.id = :id AND r.statut = 'EN_ATTENTE' AND r.paymentStatus = 'CAPTURING'")
+    int updateCaptureAbandonnee(@Param("id") Long id, @Param("maintenant") LocalDateTime maintenant);
+
     // ==========================
     // 🔹 Statistiques
     // ==========================
 
+    // Résumé d'un client : [statut, nombre, montant total] (index email, date_creation, id)
+    @Query("SELECT r.statut, COUNT(r), SUM(r.prixTotal) FROM Reservation r " +
+            "WHERE r.email = :email GROUP BY r.statut")
+    List<Object[]> getResumeClient(@Param("email") String email);
+
     @Query("SELECT YEAR(r.dateCreation), MONTH(r.dateCreation), COUNT(r) " +
             "FROM Reservation r " +
             "GROUP BY YEAR(r.dateCreation), MONTH(r.dateCreation) " +
@@ -114,21 +244,10 @@ public interface ReservationRepository extends JpaRepository<Reservation, Long>
             "AND r.dateCreation < :dateLimit")
     List<Reservation> findExpiredPendingReservations(@Param("dateLimit") LocalDateTime dateLimit);
 
-    Optional<Reservation> findByTransactionId(String transactionId);
-    // ==========================
-    // 🔹 Recherche avancée
-    // ==========================
+    // Paiements PayPal initiés mais non capturés (blocages à recharger au démarrage) : [id, dateModification]
+    @Query("SELECT r.id, r.dateModification FROM Reservation r " +
+            "WHERE r.statut = 'EN_ATTENTE' AND r.paymentStatus IN ('PENDING', 'CANCELLED')")
+    List<Object[]> findPaiementsEnCours();
 
-    @Query("SELECT r FROM Reservation r WHERE " +
-            "(:email IS NULL OR LOWER(r.email) LIKE LOWER(CONCAT('%', :email, '%'))) AND " +
-            "(:statut IS NULL OR r.statut = :statut) AND " +
-            "(:dateDebut IS NULL OR r.dateDepart >= :dateDebut) AND " +
-            "(:dateFin IS NULL OR r.dateRetour <= :dateFin) AND " +
-            "(:produitId IS NULL OR r.produit.id = :produitId)")
-    Page<Reservation> findWithFilters(@Param("email") String email,
-                                      @Param("statut") StatutReservation statut,
-                                      @Param("dateDebut") LocalDate dateDebut,
-                                      @Param("dateFin") LocalDate dateFin,
-                                      @Param("produitId") Long produitId,
-                                      Pageable pageable);
+    Optional<Reservation> findByTransactionId(String transactionId);
 }
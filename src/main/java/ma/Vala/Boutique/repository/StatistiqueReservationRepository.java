@@ -0,0 +1,41 @@
+package ma.Vala.Boutique.repository;
+
+import ma.Vala.Boutique.entities.StatistiqueReservationJour;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface StatistiqueReservationRepository
+        extends JpaRepository<StatistiqueReservationJour, StatistiqueReservationJour.Cle> {
+
+    // [année, mois, nombre de réservations], mois de départ les plus récents d'abord
+    @Query("SELECT YEAR(s.jour), MONTH(s.jour), SUM(s.nombre) " +
+            "FROM StatistiqueReservationJour s " +
+            "GROUP BY YEAR(s.jour), MONTH(s.jour) " +
+            "HAVING SUM(s.nombre) > 0 " +
+            "ORDER BY YEAR(s.jour) DESC, MONTH(s.jour) DESC")
+    List<Object[]> getStatsParMois();
+
+    // [statut, nombre de réservations]
+    @Query("SELECT s.statut, SUM(s.nombre) FROM StatistiqueReservationJour s GROUP BY s.statut")
+    List<Object[]> countParStatut();
+
+    // Même périmètre que ReservationRepository.calculateRevenueByPeriod
+    @Query("SELECT SUM(s.revenu) FROM StatistiqueReservationJour s " +
+            "WHERE s.statut IN ('CONFIRMEE', 'EN_COURS', 'TERMINEE') " +
+            "AND s.jour >= :dateDebut AND s.jour <= :dateFin")
+    Double calculerRevenu(@Param("dateDebut") LocalDate dateDebut,
+                          @Param("dateFin") LocalDate dateFin);
+
+    // Jours loués sur la même période et le même périmètre
+    @Query("SELECT SUM(s.joursLoues) FROM StatistiqueReservationJour s " +
+            "WHERE s.statut IN ('CONFIRMEE', 'EN_COURS', 'TERMINEE') " +
+            "AND s.jour >= :dateDebut AND s.jour <= :dateFin")
+    Long calculerJoursLoues(@Param("dateDebut") LocalDate dateDebut,
+                            @Param("dateFin") LocalDate dateFin);
+}
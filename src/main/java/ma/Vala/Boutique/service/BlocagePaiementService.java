@@ -0,0 +1,87 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.repository.ReservationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Blocages temporaires des véhicules pendant un paiement PayPal.
+ * Une réservation dont le paiement est initié garde son véhicule pendant la durée du blocage
+ * (15 min par défaut) ; sans capture d'ici là, elle est annulée et ses jours rendus à l'inventaire.
+ * Les échéances sont tenues dans une roue temporelle en mémoire : vérifier les expirations
+ * ne coûte aucune requête, seules les réservations réellement expirées sont annulées, par lots.
+ * Au démarrage, les paiements en cours sont rechargés depuis la base.
+ */
+@Service
+public class BlocagePaiementService {
+
+    // Tolérance sur l'échéance : un tic de la roue et l'arrondi à la seconde des dates en base
+    private static final Duration MARGE = Duration.ofSeconds(2);
+
+    private final ReservationRepository reservationRepository;
+    private final CycleReservationService cycleReservationService;
+    private final Duration duree;
+    private final RoueTemporelle<Long> roue = new RoueTemporelle<>(1000, System.currentTimeMillis());
+
+    public BlocagePaiementService(ReservationRepository reservationRepository,
+                                  CycleReservationService cycleReservationService,
+                                  @Value("${app.paypal.blocage-minutes:15}") long dureeMinutes) {
+        this.reservationRepository = reservationRepository;
+        this.cycleReservationService = cycleReservationService;
+        this.duree = Duration.ofMinutes(dureeMinutes);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recharger() {
+        List<Object[]> paiements = reservationRepository.findPaiementsEnCours();
+        for (Object[] paiement : paiements) {
+            LocalDateTime debut = paiement[1] != null ? (LocalDateTime) paiement[1] : LocalDateTime.now();
+            roue.ajouter((Long) paiement[0], debut.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + duree.toMillis());
+        }
+        System.out.println("Blocages de paiement rechargés : " + paiements.size());
+    }
+
+    // Démarre (ou prolonge) le blocage d'une réservation dont le paiement vient d'être initié
+    public void bloquer(Long reservationId) {
+        roue.ajouter(reservationId, System.currentTimeMillis() + duree.toMillis());
+    }
+
+    // Paiement capturé ou réservation traitée autrement : le blocage n'a plus lieu d'expirer
+    public void lever(Long reservationId) {
+        roue.annuler(reservationId);
+    }
+
+    public int getBlocagesEnCours() {
+        return roue.taille();
+    }
+
+    public Duration getDuree() {
+        return duree;
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void expirer() {
+        List<Long> expirees = roue.avancer(System.currentTimeMillis());
+        if (expirees.isEmpty()) {
+            return;
+        }
+        try {
+            LocalDateTime limite = LocalDateTime.now().minus(duree).plus(MARGE);
+            int annulees = cycleReservationService.expirerBlocages(expirees, limite);
+            System.out.println("Blocages de paiement expirés : " + expirees.size() + ", réservations annulées : " + annulees);
+        } catch (Exception e) {
+            System.err.println("Erreur lors de l'expiration des blocages de paiement: " + e.getMessage());
+            // Réessayées au prochain tic
+            long reessai = System.currentTimeMillis() + 1000;
+            expirees.forEach(id -> roue.ajouter(id, reessai));
+        }
+    }
+}
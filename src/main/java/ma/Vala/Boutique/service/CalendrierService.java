@@ -0,0 +1,100 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.entities.Produit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Calendrier des unités libres jour par jour d'un véhicule, pour l'écran de réservation.
+ * Calculé en une seule copie des compteurs du calendrier de disponibilité, encodé par plages
+ * (run-length) quand c'est plus compact, et gardé en cache jusqu'au prochain changement
+ * d'une réservation de ce produit ou de sa quantité.
+ */
+@Service
+public class CalendrierService {
+
+    public static final int MOIS_MAX = 12;
+
+    /**
+     * @param segments plages [unités libres, nombre de jours] si encodage = "rle", sinon null
+     * @param libres   unités libres de chaque jour si encodage = "brut", sinon null
+     */
+    public record Calendrier(Long produitId, String from, int jours, int quantite,
+                             String encodage, List<int[]> segments, int[] libres) {
+    }
+
+    private record Cle(Long produitId, LocalDate from, int mois) {
+    }
+
+    private record Entree(Calendrier calendrier, long version, int quantite) {
+    }
+
+    private final DisponibiliteService disponibiliteService;
+    private final int tailleMax;
+
+    // LinkedHashMap en ordre d'accès : le calendrier le moins récemment lu est évincé en premier
+    private final LinkedHashMap<Cle, Entree> entrees;
+
+    public CalendrierService(DisponibiliteService disponibiliteService,
+                             @Value("${app.calendrier.cache.taille-max:1000}") int tailleMax) {
+        this.disponibiliteService = disponibiliteService;
+        this.tailleMax = tailleMax;
+        this.entrees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Cle, Entree> eldest) {
+                return size() > CalendrierService.this.tailleMax;
+            }
+        };
+    }
+
+    public Calendrier calendrier(Produit produit, LocalDate from, int mois) {
+        Cle cle = new Cle(produit.getId(), from, mois);
+        int quantite = produit.getQuantite() != null ? produit.getQuantite() : 0;
+
+        Entree entree;
+        synchronized (entrees) {
+            entree = entrees.get(cle);
+        }
+        // Une entrée reste valable tant que la version des réservations du produit et sa quantité n'ont pas changé
+        if (entree != null && entree.quantite() == quantite
+                && entree.version() == disponibiliteService.getVersion(produit.getId())) {
+            return entree.calendrier();
+        }
+
+        int nombreJours = (int) (from.plusMonths(mois).toEpochDay() - from.toEpochDay());
+        DisponibiliteService.OccupationJournaliere occupation =
+                disponibiliteService.occupationParJour(produit.getId(), from, nombreJours);
+        Calendrier calendrier = encoder(produit.getId(), from, quantite, occupation.jours());
+
+        if (occupation.version() >= 0) {
+            synchronized (entrees) {
+                entrees.put(cle, new Entree(calendrier, occupation.version(), quantite));
+            }
+        }
+        return calendrier;
+    }
+
+    private static Calendrier encoder(Long produitId, LocalDate from, int quantite, int[] occupes) {
+        int[] libres = new int[occupes.length];
+        List<int[]> segments = new ArrayList<>();
+        for (int i = 0; i < occupes.length; i++) {
+            libres[i] = Math.max(0, quantite - occupes[i]);
+            if (!segments.isEmpty() && segments.get(segments.size() - 1)[0] == libres[i]) {
+                segments.get(segments.size() - 1)[1]++;
+            } else {
+                segments.add(new int[]{libres[i], 1});
+            }
+        }
+        // Chaque plage coûte deux nombres : l'encodage n'est retenu que s'il est plus court
+        if (segments.size() * 2 < libres.length) {
+            return new Calendrier(produitId, from.toString(), libres.length, quantite, "rle", segments, null);
+        }
+        return new Calendrier(produitId, from.toString(), libres.length, quantite, "brut", null, libres);
+    }
+}
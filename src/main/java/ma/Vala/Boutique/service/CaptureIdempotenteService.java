@@ -0,0 +1,348 @@
+package ma.Vala.Boutique.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Capture PayPal exécutée une seule fois par commande, quels que soient les rechargements
+ * de la page de retour, doubles clics ou instances appelées.
+ * La première exécution réserve la commande en base (ligne capture_paiement, insérée une seule fois) ;
+ * son résultat définitif (paiement confirmé) est enregistré et rejoué aux appels suivants, sans appeler PayPal.
+ * Sur une même instance, les appels simultanés attendent l'exécution en cours ; sur une autre instance,
+ * ils attendent que la ligne soit terminée. Les résultats récents sont gardés en mémoire (LRU).
+ * Le bail des captures en cours sur cette instance est renouvelé tant qu'elles s'exécutent.
+ * Un échec (paiement non complété, erreur) libère la commande : le client peut réessayer ; PayPal reçoit
+ * toujours le même PayPal-Request-Id pour la commande et rejoue une capture déjà faite au lieu de la refuser.
+ */
+@Service
+public class CaptureIdempotenteService {
+
+    /**
+     * @param aConserver résultat définitif, enregistré et rejoué aux appels suivants
+     * @param rejoue     résultat d'une exécution précédente (PayPal n'a pas été appelé)
+     */
+    public record Resultat(int statut, Map<String, Object> corps, boolean aConserver, boolean rejoue) {
+
+        public static Resultat definitif(int statut, Map<String, Object> corps) {
+            return new Resultat(statut, corps, true, false);
+        }
+
+        public static Resultat provisoire(int statut, Map<String, Object> corps) {
+            return new Resultat(statut, corps, false, false);
+        }
+
+        Resultat commeRejoue() {
+            return new Resultat(statut, corps, aConserver, true);
+        }
+    }
+
+    // Capture de la commande en cours ailleurs au-delà du délai d'attente
+    public static class CaptureEnCoursException extends RuntimeException {
+        public CaptureEnCoursException(String orderId) {
+            super("Capture déjà en cours pour la commande " + orderId);
+        }
+    }
+
+    // Idempotency-Key déjà utilisée pour une autre commande
+    public static class CleReutiliseeException extends RuntimeException {
+        public CleReutiliseeException(String cle) {
+            super("Clé d'idempotence déjà utilisée pour une autre commande : " + cle);
+        }
+    }
+
+    private static final String VERIFIER_CLE =
+            "SELECT order_id FROM capture_paiement WHERE cle_idempotence = ?";
+    private static final String RESERVER =
+            "INSERT IGNORE INTO capture_paiement (order_id, cle_idempotence, statut, proprietaire, bail_jusqua, date_creation) " +
+            "VALUES (?, ?, 'EN_COURS', ?, TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP), CURRENT_TIMESTAMP)";
+    // Instance arrêtée pendant une capture : la commande est reprise à l'expiration du bail
+    private static final String REPRENDRE =
+            "UPDATE capture_paiement SET proprietaire = ?, bail_jusqua = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) " +
+            "WHERE order_id = ? AND statut = 'EN_COURS' AND bail_jusqua <= CURRENT_TIMESTAMP";
+    private static final String LIRE =
+            "SELECT statut, http_status, reponse, bail_jusqua <= CURRENT_TIMESTAMP FROM capture_paiement WHERE order_id = ?";
+    private static final String TERMINER =
+            "UPDATE capture_paiement SET statut = 'TERMINEE', http_status = ?, reponse = ?, bail_jusqua = NULL " +
+            "WHERE order_id = ? AND proprietaire = ?";
+    // Bail perdu (reprise par une autre instance) : le résultat définitif est enregistré quand même
+    private static final String TERMINER_REPRISE =
+            "UPDATE capture_paiement SET statut = 'TERMINEE', http_status = ?, reponse = ?, bail_jusqua = NULL, proprietaire = ? " +
+            "WHERE order_id = ? AND statut = 'EN_COURS'";
+    private static final String INSERER_TERMINEE =
+            "INSERT IGNORE INTO capture_paiement (order_id, cle_idempotence, statut, proprietaire, http_status, reponse, date_creation) " +
+            "VALUES (?, ?, 'TERMINEE', ?, ?, ?, CURRENT_TIMESTAMP)";
+    private static final String RENOUVELER =
+            "UPDATE capture_paiement SET bail_jusqua = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP) " +
+            "WHERE statut = 'EN_COURS' AND proprietaire = ? AND order_id IN (%s)";
+    private static final String LIBERER =
+            "DELETE FROM capture_paiement WHERE order_id = ? AND statut = 'EN_COURS' AND proprietaire = ?";
+
+    private static final long PAUSE_ATTENTE_MS = 200;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String instance;
+    private final int tailleMax;
+    private final long bailSecondes;
+    private final long attenteMaxMs;
+
+    // Exécutions en cours sur cette instance, rejointes par les appels simultanés
+    private final ConcurrentHashMap<String, CompletableFuture<Resultat>> enCours = new ConcurrentHashMap<>();
+
+    // LinkedHashMap en ordre d'accès : le résultat le moins récemment rejoué est évincé en premier
+    private final LinkedHashMap<String, Resultat> termines;
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong rejouesMemoire = new AtomicLong();
+    private final AtomicLong rejouesBase = new AtomicLong();
+    private final AtomicLong attentes = new AtomicLong();
+    private final AtomicLong conflits = new AtomicLong();
+    private final AtomicLong bauxPerdus = new AtomicLong();
+
+    public CaptureIdempotenteService(JdbcTemplate jdbcTemplate,
+                                     ObjectMapper objectMapper,
+                                     VerrouTacheService verrouTacheService,
+                                     @Value("${app.paypal.captures.cache.taille-max:1000}") int tailleMax,
+                                     @Value("${app.paypal.captures.bail-secondes:60}") long bailSecondes,
+                                     @Value("${app.paypal.captures.attente-max-ms:20000}") long attenteMaxMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.instance = verrouTacheService.getInstance();
+        this.tailleMax = tailleMax;
+        this.bailSecondes = bailSecondes;
+        this.attenteMaxMs = attenteMaxMs;
+        this.termines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Resultat> eldest) {
+                return size() > CaptureIdempotenteService.this.tailleMax;
+            }
+        };
+    }
+
+    /**
+     * Exécute la capture de la commande si aucune exécution n'a déjà abouti ou n'est en cours,
+     * sinon retourne le résultat de celle-ci.
+     *
+     * @param cle en-tête Idempotency-Key (facultatif)
+     */
+    public Resultat executer(String orderId, String cle, Supplier<Resultat> capture) {
+        Resultat memorise;
+        synchronized (termines) {
+            memorise = termines.get(orderId);
+        }
+        if (memorise != null) {
+            rejouesMemoire.incrementAndGet();
+            return memorise.commeRejoue();
+        }
+
+        CompletableFuture<Resultat> execution = new CompletableFuture<>();
+        CompletableFuture<Resultat> existante = enCours.putIfAbsent(orderId, execution);
+        if (existante != null) {
+            attentes.incrementAndGet();
+            return attendre(orderId, existante).commeRejoue();
+        }
+
+        try {
+            Resultat resultat = executerUneFois(orderId, cle, capture);
+            execution.complete(resultat);
+            return resultat;
+        } catch (RuntimeException e) {
+            execution.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCours.remove(orderId, execution);
+        }
+    }
+
+    public Map<String, Object> getStatistiques() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("executions", executions.get());
+        stats.put("rejouesMemoire", rejouesMemoire.get());
+        stats.put("rejouesBase", rejouesBase.get());
+        stats.put("attentes", attentes.get());
+        stats.put("conflits", conflits.get());
+        stats.put("bauxPerdus", bauxPerdus.get());
+        stats.put("enCours", enCours.size());
+        synchronized (termines) {
+            stats.put("enMemoire", termines.size());
+        }
+        stats.put("tailleMax", tailleMax);
+        return stats;
+    }
+
+    /**
+     * Prolonge le bail des captures en cours sur cette instance : un appel PayPal lent
+     * (attente du pool, délais de connexion et de réponse, nouvel essai après un 401) ne le laisse pas
+     * expirer, et une autre instance ne reprend la commande que si celle-ci s'est arrêtée.
+     */
+    @Scheduled(fixedDelayString = "${app.paypal.captures.renouvellement-ms:15000}")
+    public void renouvelerBaux() {
+        List<Object> parametres = new ArrayList<>(enCours.size() + 2);
+        parametres.add(bailSecondes);
+        parametres.add(instance);
+        parametres.addAll(enCours.keySet());
+        if (parametres.size() == 2) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(String.format(RENOUVELER, String.join(", ", Collections.nCopies(parametres.size() - 2, "?"))),
+                    parametres.toArray());
+        } catch (Exception e) {
+            System.err.println("Erreur lors du renouvellement des baux de capture: " + e.getMessage());
+        }
+    }
+
+    private Resultat executerUneFois(String orderId, String cle, Supplier<Resultat> capture) {
+        if (!reserver(orderId, cle)) {
+            // Déjà capturée, ou en cours sur une autre instance
+            Resultat enregistre = attendreEnBase(orderId);
+            if (enregistre != null) {
+                rejouesBase.incrementAndGet();
+                memoriser(orderId, enregistre);
+                return enregistre.commeRejoue();
+            }
+            // Libérée entre-temps (échec) ou bail expiré
+            if (!reserver(orderId, cle)) {
+                conflits.incrementAndGet();
+                throw new CaptureEnCoursException(orderId);
+            }
+        }
+
+        executions.incrementAndGet();
+        Resultat resultat;
+        try {
+            resultat = capture.get();
+        } catch (RuntimeException e) {
+            liberer(orderId);
+            throw e;
+        }
+
+        if (resultat.aConserver()) {
+            enregistrer(orderId, cle, resultat);
+            memoriser(orderId, resultat);
+        } else {
+            liberer(orderId);
+        }
+        return resultat;
+    }
+
+    private boolean reserver(String orderId, String cle) {
+        if (cle != null) {
+            List<String> commandes = jdbcTemplate.queryForList(VERIFIER_CLE, String.class, cle);
+            if (!commandes.isEmpty() && !commandes.get(0).equals(orderId)) {
+                throw new CleReutiliseeException(cle);
+            }
+        }
+        return jdbcTemplate.update(RESERVER, orderId, cle, instance, bailSecondes) == 1
+                || jdbcTemplate.update(REPRENDRE, instance, bailSecondes, orderId) == 1;
+    }
+
+    /**
+     * Attend que la capture réservée ailleurs se termine.
+     *
+     * @return le résultat enregistré, ou null si la commande a été libérée ou son bail a expiré
+     */
+    private Resultat attendreEnBase(String orderId) {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(attenteMaxMs);
+        while (true) {
+            List<Object[]> lignes = jdbcTemplate.query(LIRE,
+                    (rs, i) -> new Object[]{rs.getString(1), rs.getObject(2, Integer.class), rs.getString(3), rs.getBoolean(4)},
+                    orderId);
+            if (lignes.isEmpty()) {
+                return null;
+            }
+            Object[] ligne = lignes.get(0);
+            if ("TERMINEE".equals(ligne[0])) {
+                return Resultat.definitif((Integer) ligne[1], lireCorps((String) ligne[2]));
+            }
+            if ((Boolean) ligne[3]) {
+                return null;
+            }
+            if (System.nanoTime() - limite > 0) {
+                conflits.incrementAndGet();
+                throw new CaptureEnCoursException(orderId);
+            }
+            try {
+                Thread.sleep(PAUSE_ATTENTE_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CaptureEnCoursException(orderId);
+            }
+        }
+    }
+
+    private Resultat attendre(String orderId, CompletableFuture<Resultat> execution) {
+        try {
+            return execution.get(attenteMaxMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            conflits.incrementAndGet();
+            throw new CaptureEnCoursException(orderId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CaptureEnCoursException(orderId);
+        }
+    }
+
+    private void enregistrer(String orderId, String cle, Resultat resultat) {
+        try {
+            String reponse = objectMapper.writeValueAsString(resultat.corps());
+            if (jdbcTemplate.update(TERMINER, resultat.statut(), reponse, orderId, instance) == 1) {
+                return;
+            }
+            // Bail expiré pendant la capture : la ligne a été reprise par une autre instance, ou libérée
+            bauxPerdus.incrementAndGet();
+            if (jdbcTemplate.update(TERMINER_REPRISE, resultat.statut(), reponse, instance, orderId) == 0
+                    && jdbcTemplate.update(INSERER_TERMINEE, orderId, cle, instance, resultat.statut(), reponse) == 0) {
+                // Déjà terminée par l'instance qui l'a reprise (même capture, rejouée par PayPal)
+                System.out.println("Capture " + orderId + " déjà enregistrée par une autre instance");
+            }
+        } catch (Exception e) {
+            // Le paiement est capturé : la réponse est renvoyée quand même, rejouée depuis la mémoire de cette instance
+            System.err.println("Erreur lors de l'enregistrement de la capture " + orderId + ": " + e.getMessage());
+        }
+    }
+
+    private void liberer(String orderId) {
+        try {
+            jdbcTemplate.update(LIBERER, orderId, instance);
+        } catch (Exception e) {
+            // La commande sera reprise à l'expiration du bail
+            System.err.println("Erreur lors de la libération de la capture " + orderId + ": " + e.getMessage());
+        }
+    }
+
+    private void memoriser(String orderId, Resultat resultat) {
+        synchronized (termines) {
+            termines.put(orderId, resultat);
+        }
+    }
+
+    private Map<String, Object> lireCorps(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Réponse de capture enregistrée illisible", e);
+        }
+    }
+}
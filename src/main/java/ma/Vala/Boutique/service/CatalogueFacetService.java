@@ -0,0 +1,327 @@
+package ma.Vala.Boutique.service;
+
+import lombok.RequiredArgsConstructor;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.events.ProduitModifieEvent;
+import ma.Vala.Boutique.repository.ProduitRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Filtrage à facettes du catalogue (catégorie, marque, année, couleur) sur des bitmaps en mémoire.
+ * Chaque produit occupe un slot ; chaque valeur de facette a un BitSet des slots qui la portent.
+ * Un filtre multi-critères est un ET de OU de bitmaps, et le nombre de produits par valeur
+ * se calcule avec les filtres des autres facettes (facettes disjonctives), sans GROUP BY.
+ * Reconstruit au démarrage, puis tenu à jour à chaque {@link ProduitModifieEvent}, comme l'index
+ * de recherche (CatalogueSearchService) : reconstruction hors verrou, modifications concurrentes rejouées.
+ */
+@Service
+@RequiredArgsConstructor
+public class CatalogueFacetService {
+
+    public enum Facette {
+        CATEGORIE("categorie", Produit::getCategorie),
+        MARQUE("marque", Produit::getMarque),
+        ANNEE("annee", p -> p.getAnnee() == null ? null : p.getAnnee().toString()),
+        COULEUR("couleur", Produit::getCouleur);
+
+        private final String nom;
+        private final Function<Produit, String> extracteur;
+
+        Facette(String nom, Function<Produit, String> extracteur) {
+            this.nom = nom;
+            this.extracteur = extracteur;
+        }
+
+        public String getNom() {
+            return nom;
+        }
+    }
+
+    public record CompteFacette(String valeur, int count) {
+    }
+
+    public record ResultatFacettes(List<Produit> produits, int totalItems,
+                                   Map<String, List<CompteFacette>> facettes) {
+    }
+
+    // Modification reçue pendant une reconstruction, numérotée dans l'ordre d'arrivée
+    private record Modification(long numero, ProduitModifieEvent event) {
+    }
+
+    // Au-delà, les slots des produits supprimés sont récupérés (tant qu'ils sont plus nombreux que les vivants)
+    private static final int SLOTS_MORTS_MIN = 64;
+
+    private final ProduitRepository produitRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Champs protégés par lock
+    private Index index = new Index();
+    private long generationPubliee = 0;
+    private long derniereModification = 0;
+    private int reconstructionsEnCours = 0;
+    private final List<Modification> journal = new ArrayList<>();
+
+    private final AtomicLong generations = new AtomicLong();
+
+    // Faux jusqu'à la première construction : rechercher() ne voit alors aucun produit
+    private volatile boolean pret;
+
+    private static final class Index {
+        // slot -> produit ; l'ordre des slots suit celui des ids (slots attribués par id croissant)
+        final List<Produit> slots = new ArrayList<>();
+        final Map<Long, Integer> slotParId = new HashMap<>();
+        final BitSet occupes = new BitSet();
+
+        // facette -> valeur normalisée -> slots portant cette valeur
+        final Map<Facette, Map<String, BitSet>> bitmaps = new EnumMap<>(Facette.class);
+        // facette -> valeur normalisée -> libellé affiché
+        final Map<Facette, Map<String, String>> libelles = new EnumMap<>(Facette.class);
+
+        Index() {
+            for (Facette facette : Facette.values()) {
+                bitmaps.put(facette, new HashMap<>());
+                libelles.put(facette, new HashMap<>());
+            }
+        }
+
+        void appliquer(ProduitModifieEvent event) {
+            Integer slot = slotParId.get(event.produitId());
+            if (slot != null) {
+                retirer(slot);
+            }
+            if (event.isSuppression()) {
+                slotParId.remove(event.produitId());
+            } else {
+                indexer(event.produit());
+            }
+        }
+
+        int slotsMorts() {
+            return slots.size() - occupes.cardinality();
+        }
+
+        // Nouvel index sans les slots des produits supprimés, dans le même ordre
+        Index compacter() {
+            Index compact = new Index();
+            for (int slot = occupes.nextSetBit(0); slot >= 0; slot = occupes.nextSetBit(slot + 1)) {
+                compact.indexer(slots.get(slot));
+            }
+            return compact;
+        }
+
+        void indexer(Produit produit) {
+            Integer slot = slotParId.get(produit.getId());
+            if (slot == null) {
+                slot = slots.size();
+                slots.add(null);
+                slotParId.put(produit.getId(), slot);
+            }
+            slots.set(slot, produit.toBuilder().build());
+            occupes.set(slot);
+
+            for (Facette facette : Facette.values()) {
+                String valeur = facette.extracteur.apply(produit);
+                if (valeur == null || valeur.isBlank()) {
+                    continue;
+                }
+                String cle = normaliser(valeur);
+                bitmaps.get(facette).computeIfAbsent(cle, c -> new BitSet()).set(slot);
+                libelles.get(facette).putIfAbsent(cle, valeur.trim());
+            }
+        }
+
+        void retirer(int slot) {
+            occupes.clear(slot);
+            slots.set(slot, null);
+            for (Facette facette : Facette.values()) {
+                Iterator<Map.Entry<String, BitSet>> it = bitmaps.get(facette).entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, BitSet> entree = it.next();
+                    entree.getValue().clear(slot);
+                    if (entree.getValue().isEmpty()) {
+                        it.remove();
+                        libelles.get(facette).remove(entree.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    // ==========================
+    // 🔹 Construction des bitmaps
+    // ==========================
+
+    /**
+     * Prépare de nouvelles bitmaps hors verrou puis les publie d'un coup ; les modifications reçues
+     * pendant la lecture de la base y sont rejouées, et des bitmaps issues d'une reconstruction
+     * plus ancienne que celles publiées sont abandonnées. Les slots sont renumérotés sans trous.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruire() {
+        long generation;
+        long depuis;
+        lock.writeLock().lock();
+        try {
+            generation = generations.incrementAndGet();
+            depuis = derniereModification;
+            reconstructionsEnCours++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        boolean publie = false;
+        int nombre = 0;
+        try {
+            List<Produit> produits = new ArrayList<>(produitRepository.findAll());
+            produits.sort(Comparator.comparing(Produit::getId));
+            Index nouvelIndex = new Index();
+            produits.forEach(nouvelIndex::indexer);
+            nombre = produits.size();
+
+            lock.writeLock().lock();
+            try {
+                if (generation > generationPubliee) {
+                    // Modifications arrivées pendant la lecture : peut-être absentes de la liste lue
+                    for (Modification modification : journal) {
+                        if (modification.numero() > depuis) {
+                            nouvelIndex.appliquer(modification.event());
+                        }
+                    }
+                    index = nouvelIndex;
+                    generationPubliee = generation;
+                    pret = true;
+                    publie = true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (--reconstructionsEnCours == 0) {
+                    journal.clear();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        if (publie) {
+            System.out.println("Facettes du catalogue reconstruites : " + nombre + " produits");
+        } else {
+            System.out.println("Reconstruction des facettes abandonnée : des facettes plus récentes sont déjà publiées");
+        }
+    }
+
+    @EventListener
+    public void onProduitModifie(ProduitModifieEvent event) {
+        lock.writeLock().lock();
+        try {
+            // Avant la première construction aussi : le journal garde la modification pour la reconstruction
+            index.appliquer(event);
+            derniereModification++;
+            if (reconstructionsEnCours > 0) {
+                journal.add(new Modification(derniereModification, event));
+            }
+            int morts = index.slotsMorts();
+            if (morts >= SLOTS_MORTS_MIN && morts > index.slots.size() - morts) {
+                index = index.compacter();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isPret() {
+        return pret;
+    }
+
+    // ==========================
+    // 🔹 Requête à facettes
+    // ==========================
+
+    /**
+     * Produits correspondant à tous les filtres (OU entre les valeurs d'une même facette),
+     * triés par id, avec pour chaque facette le nombre de produits par valeur.
+     *
+     * @param filtres valeurs demandées par facette ; une facette absente ou vide n'est pas filtrée
+     */
+    public ResultatFacettes rechercher(Map<Facette, List<String>> filtres, int page, int size) {
+        lock.readLock().lock();
+        try {
+            Map<Facette, BitSet> masques = new EnumMap<>(Facette.class);
+            filtres.forEach((facette, valeurs) -> {
+                if (valeurs != null && !valeurs.isEmpty()) {
+                    masques.put(facette, masque(facette, valeurs));
+                }
+            });
+
+            BitSet selection = (BitSet) index.occupes.clone();
+            masques.values().forEach(selection::and);
+
+            Map<String, List<CompteFacette>> facettes = new LinkedHashMap<>();
+            for (Facette facette : Facette.values()) {
+                // Chaque facette est comptée avec les filtres des autres uniquement
+                BitSet base = (BitSet) index.occupes.clone();
+                masques.forEach((autre, masque) -> {
+                    if (autre != facette) {
+                        base.and(masque);
+                    }
+                });
+                facettes.put(facette.getNom(), compter(facette, base));
+            }
+
+            int total = selection.cardinality();
+            List<Produit> produits = new ArrayList<>(Math.max(0, Math.min(size, total)));
+            int debut = page * size;
+            int rang = 0;
+            for (int slot = selection.nextSetBit(0); slot >= 0 && produits.size() < size;
+                 slot = selection.nextSetBit(slot + 1)) {
+                if (rang++ >= debut) {
+                    produits.add(index.slots.get(slot));
+                }
+            }
+            return new ResultatFacettes(produits, total, facettes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private BitSet masque(Facette facette, List<String> valeurs) {
+        BitSet masque = new BitSet();
+        for (String valeur : valeurs) {
+            BitSet bitmap = index.bitmaps.getOrDefault(facette, Map.of()).get(normaliser(valeur));
+            if (bitmap != null) {
+                masque.or(bitmap);
+            }
+        }
+        return masque;
+    }
+
+    private List<CompteFacette> compter(Facette facette, BitSet base) {
+        List<CompteFacette> comptes = new ArrayList<>();
+        index.bitmaps.getOrDefault(facette, Map.of()).forEach((cle, bitmap) -> {
+            BitSet intersection = (BitSet) bitmap.clone();
+            intersection.and(base);
+            int count = intersection.cardinality();
+            if (count > 0) {
+                comptes.add(new CompteFacette(index.libelles.get(facette).get(cle), count));
+            }
+        });
+        comptes.sort(Comparator.comparingInt(CompteFacette::count).reversed()
+                .thenComparing(CompteFacette::valeur));
+        return comptes;
+    }
+
+    private static String normaliser(String valeur) {
+        return valeur.trim().toLowerCase(Locale.ROOT);
+    }
+}
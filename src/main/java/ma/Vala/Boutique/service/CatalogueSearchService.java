@@ -0,0 +1,337 @@
+package ma.Vala.Boutique.service;
+
+import lombok.RequiredArgsConstructor;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.events.ProduitModifieEvent;
+import ma.Vala.Boutique.repository.ProduitRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Moteur de recherche du catalogue, entièrement en mémoire.
+ * Index inversé des mots (sans accents, en minuscules) de nom, marque, catégorie et description,
+ * complété par un index de trigrammes sur le vocabulaire pour retrouver les sous-chaînes
+ * comme le faisait le LIKE '%mot%' sans parcourir la table produits.
+ * Reconstruit au démarrage, puis tenu à jour à chaque {@link ProduitModifieEvent}.
+ * Une reconstruction prépare un nouvel index hors verrou puis le publie d'un coup ;
+ * les modifications reçues pendant sa lecture de la base y sont rejouées, et un index
+ * issu d'une reconstruction plus ancienne que celui publié est abandonné.
+ */
+@Service
+@RequiredArgsConstructor
+public class CatalogueSearchService {
+
+    private static final int TAILLE_NGRAM = 3;
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATEURS = Pattern.compile("[^a-z0-9]+");
+
+    // Poids de chaque champ dans le score de pertinence
+    private enum Champ {
+        NOM(4), MARQUE(3), CATEGORIE(2), DESCRIPTION(1);
+
+        private final int poids;
+
+        Champ(int poids) {
+            this.poids = poids;
+        }
+    }
+
+    // Modification reçue pendant une reconstruction, numérotée dans l'ordre d'arrivée
+    private record Modification(long numero, ProduitModifieEvent event) {
+    }
+
+    private final ProduitRepository produitRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Champs protégés par lock
+    private Index index = new Index();
+    private long generationPubliee = 0;
+    private long derniereModification = 0;
+    private int reconstructionsEnCours = 0;
+    private final List<Modification> journal = new ArrayList<>();
+
+    private final AtomicLong generations = new AtomicLong();
+
+    private volatile boolean pret = false;
+
+    private static final class Index {
+        // Copies des produits indexés, par id
+        final Map<Long, Produit> documents = new HashMap<>();
+        // terme -> (id produit -> poids cumulé des champs contenant le terme)
+        final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+        // trigramme -> termes du vocabulaire qui le contiennent
+        final Map<String, Set<String>> trigrammes = new HashMap<>();
+        // id produit -> termes indexés, pour pouvoir le retirer de l'index
+        final Map<Long, Set<String>> termesParProduit = new HashMap<>();
+
+        void appliquer(ProduitModifieEvent event) {
+            desindexer(event.produitId());
+            if (!event.isSuppression()) {
+                indexer(event.produit());
+            }
+        }
+
+        void indexer(Produit produit) {
+            Map<String, Integer> poidsParTerme = new HashMap<>();
+            ajouterChamp(poidsParTerme, produit.getNom(), Champ.NOM);
+            ajouterChamp(poidsParTerme, produit.getMarque(), Champ.MARQUE);
+            ajouterChamp(poidsParTerme, produit.getCategorie(), Champ.CATEGORIE);
+            ajouterChamp(poidsParTerme, produit.getDescription(), Champ.DESCRIPTION);
+
+            poidsParTerme.forEach((terme, poids) -> {
+                Map<Long, Integer> liste = postings.get(terme);
+                if (liste == null) {
+                    liste = new HashMap<>();
+                    postings.put(terme, liste);
+                    for (String gramme : ngrammes(terme)) {
+                        trigrammes.computeIfAbsent(gramme, g -> new HashSet<>()).add(terme);
+                    }
+                }
+                liste.put(produit.getId(), poids);
+            });
+
+            documents.put(produit.getId(), produit.toBuilder().build());
+            termesParProduit.put(produit.getId(), poidsParTerme.keySet());
+        }
+
+        void desindexer(Long produitId) {
+            documents.remove(produitId);
+            Set<String> termes = termesParProduit.remove(produitId);
+            if (termes == null) {
+                return;
+            }
+            for (String terme : termes) {
+                Map<Long, Integer> liste = postings.get(terme);
+                liste.remove(produitId);
+                if (liste.isEmpty()) {
+                    // Plus aucun produit ne contient ce terme : on le retire du vocabulaire
+                    postings.remove(terme);
+                    for (String gramme : ngrammes(terme)) {
+                        Set<String> vocabulaire = trigrammes.get(gramme);
+                        vocabulaire.remove(terme);
+                        if (vocabulaire.isEmpty()) {
+                            trigrammes.remove(gramme);
+                        }
+                    }
+                }
+            }
+        }
+
+        private static void ajouterChamp(Map<String, Integer> poidsParTerme, String valeur, Champ champ) {
+            for (String terme : new HashSet<>(tokeniser(valeur))) {
+                poidsParTerme.merge(terme, champ.poids, Integer::sum);
+            }
+        }
+    }
+
+    // ==========================
+    // 🔹 Construction de l'index
+    // ==========================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruire() {
+        long generation;
+        long depuis;
+        lock.writeLock().lock();
+        try {
+            generation = generations.incrementAndGet();
+            depuis = derniereModification;
+            reconstructionsEnCours++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        boolean publie = false;
+        int nombre = 0;
+        try {
+            List<Produit> produits = produitRepository.findAll();
+            Index nouvelIndex = new Index();
+            produits.forEach(nouvelIndex::indexer);
+            nombre = produits.size();
+
+            lock.writeLock().lock();
+            try {
+                if (generation > generationPubliee) {
+                    // Modifications arrivées pendant la lecture : peut-être absentes de la liste lue
+                    for (Modification modification : journal) {
+                        if (modification.numero() > depuis) {
+                            nouvelIndex.appliquer(modification.event());
+                        }
+                    }
+                    index = nouvelIndex;
+                    generationPubliee = generation;
+                    pret = true;
+                    publie = true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (--reconstructionsEnCours == 0) {
+                    journal.clear();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        if (publie) {
+            System.out.println("Index du catalogue reconstruit : " + nombre + " produits");
+        } else {
+            System.out.println("Reconstruction de l'index du catalogue abandonnée : un index plus récent est déjà publié");
+        }
+    }
+
+    @EventListener
+    public void onProduitModifie(ProduitModifieEvent event) {
+        lock.writeLock().lock();
+        try {
+            index.appliquer(event);
+            derniereModification++;
+            if (reconstructionsEnCours > 0) {
+                journal.add(new Modification(derniereModification, event));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==========================
+    // 🔹 Recherche
+    // ==========================
+
+    /**
+     * Recherche les produits contenant tous les mots du keyword (sous-chaînes acceptées),
+     * triés par pertinence décroissante puis par id.
+     */
+    public Page<Produit> rechercher(String keyword, Pageable pageable) {
+        if (!pret) {
+            // Index pas encore construit (démarrage en cours) : on passe par la base
+            return produitRepository.findByKeywordInAllFields(keyword, pageable);
+        }
+
+        List<String> motsRequete = tokeniser(keyword);
+        if (motsRequete.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = null;
+            for (String mot : motsRequete) {
+                Map<Long, Double> scoresMot = scorerMot(mot);
+                if (scores == null) {
+                    scores = scoresMot;
+                } else {
+                    // ET logique entre les mots de la requête
+                    scores.keySet().retainAll(scoresMot.keySet());
+                    scores.replaceAll((id, score) -> score + scoresMot.get(id));
+                }
+                if (scores.isEmpty()) {
+                    return Page.empty(pageable);
+                }
+            }
+
+            List<Map.Entry<Long, Double>> classement = new ArrayList<>(scores.entrySet());
+            classement.sort(Map.Entry.<Long, Double>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+
+            int debut = (int) Math.min(pageable.getOffset(), classement.size());
+            int fin = Math.min(debut + pageable.getPageSize(), classement.size());
+            List<Produit> contenu = new ArrayList<>(fin - debut);
+            for (Map.Entry<Long, Double> entree : classement.subList(debut, fin)) {
+                contenu.add(index.documents.get(entree.getKey()));
+            }
+            return new PageImpl<>(contenu, pageable, classement.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isPret() {
+        return pret;
+    }
+
+    // Score de chaque produit pour un mot : terme exact > préfixe > sous-chaîne
+    private Map<Long, Double> scorerMot(String mot) {
+        Map<Long, Double> scores = new HashMap<>();
+        for (String terme : termesContenant(mot)) {
+            double bonus = terme.equals(mot) ? 2.0 : terme.startsWith(mot) ? 1.5 : 1.0;
+            index.postings.get(terme).forEach((id, poids) -> scores.merge(id, poids * bonus, Math::max));
+        }
+        return scores;
+    }
+
+    private Collection<String> termesContenant(String mot) {
+        if (mot.length() < TAILLE_NGRAM) {
+            // Mot trop court pour les trigrammes : le vocabulaire est petit, on le parcourt
+            List<String> resultat = new ArrayList<>();
+            for (String terme : index.postings.keySet()) {
+                if (terme.contains(mot)) {
+                    resultat.add(terme);
+                }
+            }
+            return resultat;
+        }
+
+        // Intersection des termes partageant tous les trigrammes du mot, en partant du plus sélectif
+        List<Set<String>> candidats = new ArrayList<>();
+        for (String gramme : ngrammes(mot)) {
+            Set<String> vocabulaire = index.trigrammes.get(gramme);
+            if (vocabulaire == null) {
+                return List.of();
+            }
+            candidats.add(vocabulaire);
+        }
+        candidats.sort(Comparator.comparingInt(Set::size));
+
+        List<String> resultat = new ArrayList<>();
+        for (String terme : candidats.get(0)) {
+            if (terme.contains(mot)) {
+                resultat.add(terme);
+            }
+        }
+        return resultat;
+    }
+
+    // ==========================
+    // 🔹 Normalisation
+    // ==========================
+
+    static List<String> tokeniser(String texte) {
+        if (texte == null || texte.isBlank()) {
+            return List.of();
+        }
+        String normalise = ACCENTS.matcher(Normalizer.normalize(texte, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> mots = new ArrayList<>();
+        for (String mot : SEPARATEURS.split(normalise)) {
+            if (!mot.isEmpty()) {
+                mots.add(mot);
+            }
+        }
+        return mots;
+    }
+
+    private static Set<String> ngrammes(String terme) {
+        Set<String> grammes = new HashSet<>();
+        for (int i = 0; i + TAILLE_NGRAM <= terme.length(); i++) {
+            grammes.add(terme.substring(i, i + TAILLE_NGRAM));
+        }
+        return grammes;
+    }
+}
@@ -0,0 +1,106 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.events.ProduitModifieEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Numéro de version du catalogue, tenu en base (version_catalogue) et incrémenté à chaque modification
+ * de produit, quelle que soit l'instance qui la fait, comme la version des tarifs (TarificationService).
+ * Sert à construire l'ETag et le Last-Modified des endpoints de lecture du catalogue, qui peuvent ainsi
+ * répondre 304 à un If-None-Match sans lire les produits : la version en base est relue au plus
+ * toutes les app.catalogue.version.verification-ms.
+ */
+@Service
+public class CatalogueVersionService {
+
+    private static final String CREER_VERSION =
+            "INSERT IGNORE INTO version_catalogue (id, version, date_modification) VALUES (1, 0, ?)";
+    private static final String LIRE_VERSION =
+            "SELECT version, date_modification FROM version_catalogue WHERE id = 1";
+    private static final String INCREMENTER_VERSION =
+            "UPDATE version_catalogue SET version = version + 1, date_modification = ? WHERE id = 1";
+
+    private record Etat(long version, long derniereModification) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long verificationNs;
+
+    // Version -1 : pas encore lue, la première requête interroge la base
+    private volatile Etat etat = new Etat(-1, 0);
+    private volatile long prochaineVerification = System.nanoTime();
+
+    public CatalogueVersionService(JdbcTemplate jdbcTemplate,
+                                   @Value("${app.catalogue.version.verification-ms:1000}") long verificationMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.verificationNs = TimeUnit.MILLISECONDS.toNanos(verificationMs);
+    }
+
+    // Dans la transaction de la modification quand il y en a une : la version change avec les produits
+    @EventListener
+    public void onProduitModifie(ProduitModifieEvent event) {
+        long maintenant = System.currentTimeMillis();
+        if (jdbcTemplate.update(INCREMENTER_VERSION, maintenant) == 0) {
+            jdbcTemplate.update(CREER_VERSION, maintenant);
+            jdbcTemplate.update(INCREMENTER_VERSION, maintenant);
+        }
+        // Relue tout de suite : cette instance ne sert plus l'ancienne version
+        etat = lireEtat();
+        prochaineVerification = System.nanoTime() + verificationNs;
+    }
+
+    public long getVersion() {
+        return etatAJour().version();
+    }
+
+    // ETag fort, entre guillemets comme l'exige HTTP
+    public String getEtag() {
+        return etag(etatAJour());
+    }
+
+    public long getDerniereModification() {
+        return etatAJour().derniereModification();
+    }
+
+    /**
+     * Compare If-None-Match / If-Modified-Since à la version courante et pose ETag et Last-Modified.
+     * À appeler avant toute lecture en base : si true, la réponse 304 est prête et le
+     * contrôleur doit simplement retourner null.
+     */
+    public boolean checkNotModified(WebRequest webRequest) {
+        Etat courant = etatAJour();
+        return webRequest.checkNotModified(etag(courant), courant.derniereModification());
+    }
+
+    private static String etag(Etat etat) {
+        return "\"catalogue-" + etat.version() + "\"";
+    }
+
+    // Version relue si la dernière vérification est trop ancienne (modification faite sur une autre instance)
+    private Etat etatAJour() {
+        long maintenant = System.nanoTime();
+        if (etat.version() < 0 || maintenant - prochaineVerification >= 0) {
+            prochaineVerification = maintenant + verificationNs;
+            etat = lireEtat();
+        }
+        return etat;
+    }
+
+    private Etat lireEtat() {
+        List<Etat> lignes = jdbcTemplate.query(LIRE_VERSION,
+                (rs, i) -> new Etat(rs.getLong(1), rs.getLong(2)));
+        if (lignes.isEmpty()) {
+            long maintenant = System.currentTimeMillis();
+            jdbcTemplate.update(CREER_VERSION, maintenant);
+            return new Etat(0, maintenant);
+        }
+        return lignes.get(0);
+    }
+}
@@ -0,0 +1,173 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.entities.Reservation.StatutReservation;
+import ma.Vala.Boutique.events.ReservationModifieeEvent;
+import ma.Vala.Boutique.service.StatistiquesReservationService.Mouvement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cycle de vie automatique des réservations, exécuté périodiquement :
+ * CONFIRMEE -> EN_COURS le jour du départ, EN_COURS -> TERMINEE le jour du retour,
+ * EN_ATTENTE -> ANNULEE au-delà du délai d'attente (sauf pendant une capture de paiement).
+ * Chaque transition est un UPDATE ensembliste par lots (lignes verrouillées par SELECT ... FOR UPDATE),
+ * sans charger les entités. Les réservations qui deviennent inactives rendent aussitôt leurs jours
+ * au registre d'inventaire, dans la même transaction qui met aussi à jour les statistiques agrégées,
+ * et le calendrier en mémoire est prévenu après le commit.
+ * Une seule instance exécute chaque passage (bail dans verrou_tache).
+ */
+@Service
+public class CycleReservationService {
+
+    private static final String TACHE = "cycle-reservations";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final InventaireService inventaireService;
+    private final StatistiquesReservationService statistiquesService;
+    private final VerrouTacheService verrouTacheService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long intervalleMs;
+    private final int tailleLot;
+    private final Duration attenteMax;
+
+    public CycleReservationService(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   InventaireService inventaireService,
+                                   StatistiquesReservationService statistiquesService,
+                                   VerrouTacheService verrouTacheService,
+                                   ApplicationEventPublisher eventPublisher,
+                                   @Value("${app.reservations.cycle.intervalle-ms:60000}") long intervalleMs,
+                                   @Value("${app.reservations.cycle.taille-lot:500}") int tailleLot,
+                                   @Value("${app.reservations.attente-max-minutes:1440}") long attenteMaxMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.inventaireService = inventaireService;
+        this.statistiquesService = statistiquesService;
+        this.verrouTacheService = verrouTacheService;
+        this.eventPublisher = eventPublisher;
+        this.intervalleMs = intervalleMs;
+        this.tailleLot = tailleLot;
+        this.attenteMax = Duration.ofMinutes(attenteMaxMinutes);
+    }
+
+    @Scheduled(fixedDelayString = "${app.reservations.cycle.intervalle-ms:60000}",
+            initialDelayString = "${app.reservations.cycle.delai-initial-ms:30000}")
+    public void executer() {
+        // Bail un peu plus court que l'intervalle : l'instance suivante peut prendre le relais au prochain passage
+        if (!verrouTacheService.acquerir(TACHE, Duration.ofMillis(intervalleMs * 9 / 10))) {
+            return;
+        }
+        try {
+            LocalDate aujourdhui = LocalDate.now();
+            int demarrees = transition(StatutReservation.CONFIRMEE, StatutReservation.EN_COURS,
+                    "date_depart <= ?", aujourdhui);
+            int terminees = transition(StatutReservation.EN_COURS, StatutReservation.TERMINEE,
+                    "date_retour <= ?", aujourdhui);
+            // Une capture PayPal en cours n'est jamais annulée : le client est peut-être déjà débité
+            int expirees = transition(StatutReservation.EN_ATTENTE, StatutReservation.ANNULEE,
+                    "date_creation < ? AND (payment_status IS NULL OR payment_status <> 'CAPTURING')",
+                    Timestamp.valueOf(LocalDateTime.now().minus(attenteMax)));
+
+            if (demarrees + terminees + expirees > 0) {
+                System.out.println("Cycle des réservations : " + demarrees + " démarrées, "
+                        + terminees + " terminées, " + expirees + " expirées");
+            }
+        } catch (Exception e) {
+            System.err.println("Erreur dans le cycle des réservations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Annule les réservations toujours en attente de paiement dont le blocage a expiré.
+     * Celles qui ont été payées, dont la capture est en cours (CAPTURING) ou dont le paiement
+     * a été relancé après la limite (blocage plus récent, sur cette instance ou une autre) ne sont pas touchées.
+     *
+     * @param limite début de blocage au-delà duquel une réservation n'est pas encore expirée
+     */
+    public int expirerBlocages(List<Long> reservationIds, LocalDateTime limite) {
+        int total = 0;
+        for (int i = 0; i < reservationIds.size(); i += tailleLot) {
+            List<Long> lot = reservationIds.subList(i, Math.min(i + tailleLot, reservationIds.size()));
+            List<Object> valeurs = new ArrayList<>(lot.size() + 1);
+            valeurs.add(Timestamp.valueOf(limite));
+            valeurs.addAll(lot);
+            total += transition(StatutReservation.EN_ATTENTE, StatutReservation.ANNULEE,
+                    "payment_status IN ('PENDING', 'CANCELLED') " +
+                    "AND (date_modification IS NULL OR date_modification <= ?) " +
+                    "AND id IN (" + String.join(", ", Collections.nCopies(lot.size(), "?")) + ")",
+                    valeurs.toArray());
+        }
+        return total;
+    }
+
+    /**
+     * Applique une transition à toutes les réservations du statut "ancien" vérifiant la condition,
+     * par lots de tailleLot, chaque lot dans sa propre transaction.
+     */
+    int transition(StatutReservation ancien, StatutReservation nouveau, String condition, Object... valeurs) {
+        int total = 0;
+        int traitees;
+        do {
+            Integer lot = transactionTemplate.execute(status -> transitionLot(ancien, nouveau, condition, valeurs));
+            traitees = lot != null ? lot : 0;
+            total += traitees;
+        } while (traitees == tailleLot);
+        return total;
+    }
+
+    private int transitionLot(StatutReservation ancien, StatutReservation nouveau, String condition, Object[] valeurs) {
+        List<Object> parametresSelection = new ArrayList<>(valeurs.length + 2);
+        parametresSelection.add(ancien.name());
+        parametresSelection.addAll(Arrays.asList(valeurs));
+        parametresSelection.add(tailleLot);
+        List<Object[]> lignes = jdbcTemplate.query(
+                "SELECT id, produit_id, date_depart, date_retour, prix_total, nombre_jours, email FROM reservations " +
+                "WHERE statut = ? AND " + condition + " ORDER BY id LIMIT ? FOR UPDATE",
+                (rs, i) -> new Object[]{rs.getLong(1), rs.getLong(2),
+                        rs.getObject(3, LocalDate.class), rs.getObject(4, LocalDate.class),
+                        rs.getDouble(5), rs.getInt(6), rs.getString(7)},
+                parametresSelection.toArray());
+        if (lignes.isEmpty()) {
+            return 0;
+        }
+
+        List<Object> parametres = new ArrayList<>(lignes.size() + 2);
+        parametres.add(nouveau.name());
+        parametres.add(Timestamp.valueOf(LocalDateTime.now()));
+        lignes.forEach(ligne -> parametres.add(ligne[0]));
+        jdbcTemplate.update("UPDATE reservations SET statut = ?, date_modification = ? WHERE id IN ("
+                + String.join(", ", Collections.nCopies(lignes.size(), "?")) + ")", parametres.toArray());
+
+        if (ancien.isActive() && !nouveau.isActive()) {
+            List<Object[]> periodes = new ArrayList<>(lignes.size());
+            lignes.forEach(ligne -> periodes.add(new Object[]{ligne[1], ligne[2], ligne[3]}));
+            inventaireService.libererLot(periodes);
+        }
+
+        List<Mouvement> mouvements = new ArrayList<>(lignes.size());
+        lignes.forEach(ligne -> mouvements.add(new Mouvement((Long) ligne[1], (LocalDate) ligne[2],
+                (Double) ligne[4], (Integer) ligne[5], ancien, nouveau)));
+        statistiquesService.appliquer(mouvements);
+
+        for (Object[] ligne : lignes) {
+            eventPublisher.publishEvent(new ReservationModifieeEvent((Long) ligne[0], (Long) ligne[1],
+                    (LocalDate) ligne[2], (LocalDate) ligne[3], (String) ligne[6], nouveau));
+        }
+        return lignes.size();
+    }
+}
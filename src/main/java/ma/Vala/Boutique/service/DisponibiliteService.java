@@ -0,0 +1,359 @@
+package ma.Vala.Boutique.service;
+
+import lombok.RequiredArgsConstructor;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.events.ReservationModifieeEvent;
+import ma.Vala.Boutique.repository.ReservationRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Calendrier de disponibilité des véhicules, entièrement en mémoire.
+ * Pour chaque produit, un compteur par jour du nombre de réservations actives
+ * (EN_ATTENTE, CONFIRMEE, EN_COURS) occupant un véhicule ce jour-là.
+ * Une réservation occupe les jours de [dateDepart, dateRetour[ : le véhicule rendu
+ * un jour peut repartir le même jour.
+ * Chargé au démarrage, puis tenu à jour à chaque {@link ReservationModifieeEvent}.
+ */
+@Service
+@RequiredArgsConstructor
+public class DisponibiliteService {
+
+    // Marge ajoutée en fin de tableau pour éviter une copie à chaque nouvelle réservation
+    private static final int MARGE_JOURS = 90;
+
+    private final ReservationRepository reservationRepository;
+    private final InventaireService inventaireService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Champs protégés par lock
+    private Calendrier calendrier = new Calendrier();
+    // id produit -> version, incrémentée à chaque changement de ses réservations
+    private final Map<Long, Long> versions = new HashMap<>();
+    private long generationPubliee = 0;
+    private long derniereModification = 0;
+    private int reconstructionsEnCours = 0;
+    private final List<Modification> journal = new ArrayList<>();
+
+    private final AtomicLong generations = new AtomicLong();
+
+    private volatile boolean pret = false;
+
+    private record Periode(Long produitId, long debut, long fin) {
+    }
+
+    // Modification reçue pendant une reconstruction, numérotée dans l'ordre d'arrivée
+    private record Modification(long numero, ReservationModifieeEvent event) {
+    }
+
+    public record ProduitDisponible(Produit produit, int vehiculesDisponibles) {
+    }
+
+    /**
+     * Véhicules occupés jour par jour sur une fenêtre.
+     * version vaut -1 quand le calendrier n'est pas encore chargé (résultat à ne pas mettre en cache).
+     */
+    public record OccupationJournaliere(long version, int[] jours) {
+    }
+
+    private static final class Calendrier {
+        // id produit -> occupation jour par jour
+        final Map<Long, Occupation> occupations = new HashMap<>();
+        // id réservation -> période actuellement comptée, pour pouvoir la retirer
+        final Map<Long, Periode> periodes = new HashMap<>();
+
+        void appliquer(ReservationModifieeEvent event) {
+            retirer(event.reservationId());
+            if (!event.isSuppression() && event.statut().isActive()) {
+                ajouter(event.reservationId(), event.produitId(), event.dateDepart(), event.dateRetour());
+            }
+        }
+
+        void ajouter(Long reservationId, Long produitId, LocalDate dateDepart, LocalDate dateRetour) {
+            long debut = dateDepart.toEpochDay();
+            long fin = finExclue(debut, dateRetour);
+            occupations.computeIfAbsent(produitId, id -> new Occupation()).ajouter(debut, fin, 1);
+            periodes.put(reservationId, new Periode(produitId, debut, fin));
+        }
+
+        void retirer(Long reservationId) {
+            Periode periode = periodes.remove(reservationId);
+            if (periode != null) {
+                occupations.get(periode.produitId()).ajouter(periode.debut(), periode.fin(), -1);
+            }
+        }
+    }
+
+    // ==========================
+    // 🔹 Chargement et mise à jour
+    // ==========================
+
+    /**
+     * Charge un nouveau calendrier hors verrou puis le publie d'un coup, comme les index du catalogue :
+     * les modifications reçues pendant la lecture de la base y sont rejouées, et un calendrier issu
+     * d'une reconstruction plus ancienne que celui publié est abandonné.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruire() {
+        long generation;
+        long depuis;
+        lock.writeLock().lock();
+        try {
+            generation = generations.incrementAndGet();
+            depuis = derniereModification;
+            reconstructionsEnCours++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        boolean publie = false;
+        int nombre = 0;
+        try {
+            List<Object[]> lignes = reservationRepository.findPeriodesActives(LocalDate.now());
+            Calendrier nouveau = new Calendrier();
+            for (Object[] ligne : lignes) {
+                nouveau.ajouter((Long) ligne[0], (Long) ligne[1], (LocalDate) ligne[2], (LocalDate) ligne[3]);
+            }
+            nombre = lignes.size();
+
+            lock.writeLock().lock();
+            try {
+                if (generation > generationPubliee) {
+                    // Modifications arrivées pendant la lecture : peut-être absentes des lignes lues
+                    for (Modification modification : journal) {
+                        if (modification.numero() > depuis) {
+                            nouveau.appliquer(modification.event());
+                        }
+                    }
+                    calendrier = nouveau;
+                    versions.replaceAll((id, version) -> version + 1);
+                    generationPubliee = generation;
+                    pret = true;
+                    publie = true;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (--reconstructionsEnCours == 0) {
+                    journal.clear();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        if (publie) {
+            System.out.println("Calendrier de disponibilité chargé : " + nombre + " réservations actives");
+        } else {
+            System.out.println("Chargement du calendrier abandonné : un calendrier plus récent est déjà publié");
+        }
+    }
+
+    // Après le commit quand l'événement est publié dans une transaction, immédiatement sinon
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationModifiee(ReservationModifieeEvent event) {
+        lock.writeLock().lock();
+        try {
+            versions.merge(event.produitId(), 1L, Long::sum);
+            // Avant le premier chargement aussi : le journal garde la modification pour la reconstruction
+            calendrier.appliquer(event);
+            derniereModification++;
+            if (reconstructionsEnCours > 0) {
+                journal.add(new Modification(derniereModification, event));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Une période d'un seul jour (départ = retour) occupe quand même ce jour
+    private static long finExclue(long debut, LocalDate dateRetour) {
+        return Math.max(dateRetour.toEpochDay(), debut + 1);
+    }
+
+    // ==========================
+    // 🔹 Consultation
+    // ==========================
+
+    /**
+     * Plus grand nombre de véhicules occupés un même jour de la période demandée.
+     * Tant que le calendrier n'est pas chargé, le registre d'inventaire (même compte par jour) est lu.
+     */
+    public int occupationMax(Long produitId, LocalDate dateDepart, LocalDate dateRetour) {
+        if (!pret) {
+            return inventaireService.occupationMax(produitId, dateDepart, dateRetour);
+        }
+        long debut = dateDepart.toEpochDay();
+        long fin = finExclue(debut, dateRetour);
+        lock.readLock().lock();
+        try {
+            Occupation occupation = calendrier.occupations.get(produitId);
+            return occupation == null ? 0 : occupation.max(debut, fin);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int unitesLibres(Produit produit, LocalDate dateDepart, LocalDate dateRetour) {
+        int quantite = produit.getQuantite() != null ? produit.getQuantite() : 0;
+        return Math.max(0, quantite - occupationMax(produit.getId(), dateDepart, dateRetour));
+    }
+
+    public boolean estDisponible(Produit produit, LocalDate dateDepart, LocalDate dateRetour) {
+        return unitesLibres(produit, dateDepart, dateRetour) > 0;
+    }
+
+    /**
+     * Disponibilité de plusieurs véhicules sur la même période, en un seul passage :
+     * un seul verrou pris sur le calendrier, ou une seule requête groupée sur le registre d'inventaire
+     * tant qu'il n'est pas chargé.
+     * Seuls les véhicules ayant au moins une unité libre sont retournés, dans l'ordre reçu.
+     */
+    public List<ProduitDisponible> disponibles(List<Produit> produits, LocalDate dateDepart, LocalDate dateRetour) {
+        Map<Long, Integer> occupes;
+        if (!pret) {
+            occupes = inventaireService.occupationMaxParProduit(dateDepart, dateRetour);
+        } else {
+            occupes = new HashMap<>();
+            long debut = dateDepart.toEpochDay();
+            long fin = finExclue(debut, dateRetour);
+            lock.readLock().lock();
+            try {
+                for (Produit produit : produits) {
+                    Occupation occupation = calendrier.occupations.get(produit.getId());
+                    if (occupation != null) {
+                        occupes.put(produit.getId(), occupation.max(debut, fin));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        List<ProduitDisponible> resultat = new ArrayList<>();
+        for (Produit produit : produits) {
+            int quantite = produit.getQuantite() != null ? produit.getQuantite() : 0;
+            int libres = quantite - occupes.getOrDefault(produit.getId(), 0);
+            if (libres > 0) {
+                resultat.add(new ProduitDisponible(produit, libres));
+            }
+        }
+        return resultat;
+    }
+
+    /**
+     * Occupation de chaque jour de [debut, debut + nombreJours[ pour un produit, avec la version
+     * de ses réservations lue sous le même verrou. Avant le chargement du calendrier, calculée en
+     * un seul balayage des réservations actives du produit (tableau de différences).
+     */
+    public OccupationJournaliere occupationParJour(Long produitId, LocalDate debut, int nombreJours) {
+        long base = debut.toEpochDay();
+        int[] jours = new int[nombreJours];
+        if (!pret) {
+            int[] differences = new int[nombreJours + 1];
+            for (Object[] ligne : reservationRepository.findPeriodesActivesProduit(
+                    produitId, debut, debut.plusDays(nombreJours))) {
+                long depart = ((LocalDate) ligne[0]).toEpochDay();
+                long fin = finExclue(depart, (LocalDate) ligne[1]);
+                differences[(int) (Math.max(depart, base) - base)]++;
+                differences[(int) (Math.min(fin, base + nombreJours) - base)]--;
+            }
+            int courant = 0;
+            for (int i = 0; i < nombreJours; i++) {
+                courant += differences[i];
+                jours[i] = courant;
+            }
+            return new OccupationJournaliere(-1, jours);
+        }
+
+        lock.readLock().lock();
+        try {
+            Occupation occupation = calendrier.occupations.get(produitId);
+            if (occupation != null) {
+                occupation.copier(base, jours);
+            }
+            return new OccupationJournaliere(versions.getOrDefault(produitId, 0L), jours);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Version des réservations d'un produit, -1 tant que le calendrier n'est pas chargé
+    public long getVersion(Long produitId) {
+        if (!pret) {
+            return -1;
+        }
+        lock.readLock().lock();
+        try {
+            return versions.getOrDefault(produitId, 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isPret() {
+        return pret;
+    }
+
+    // Compteurs journaliers d'un produit, dans un tableau indexé à partir du jour "base" (epoch day)
+    private static final class Occupation {
+
+        private long base;
+        private int[] jours = new int[0];
+
+        void ajouter(long debut, long fin, int delta) {
+            couvrir(debut, fin);
+            for (long jour = debut; jour < fin; jour++) {
+                jours[(int) (jour - base)] += delta;
+            }
+        }
+
+        int max(long debut, long fin) {
+            int max = 0;
+            long de = Math.max(debut, base);
+            long a = Math.min(fin, base + jours.length);
+            for (long jour = de; jour < a; jour++) {
+                max = Math.max(max, jours[(int) (jour - base)]);
+            }
+            return max;
+        }
+
+        // Copie les compteurs à partir du jour "debut" ; les jours hors du tableau restent à 0
+        void copier(long debut, int[] destination) {
+            long de = Math.max(debut, base);
+            long a = Math.min(debut + destination.length, base + jours.length);
+            if (de < a) {
+                System.arraycopy(jours, (int) (de - base), destination, (int) (de - debut), (int) (a - de));
+            }
+        }
+
+        private void couvrir(long debut, long fin) {
+            long finActuelle = base + jours.length;
+            if (jours.length > 0 && debut >= base && fin <= finActuelle) {
+                return;
+            }
+            long nouvelleBase = jours.length == 0 ? debut : Math.min(base, debut);
+            long nouvelleFin = Math.max(jours.length == 0 ? fin : finActuelle, fin + MARGE_JOURS);
+            int[] copie = new int[(int) (nouvelleFin - nouvelleBase)];
+            if (jours.length > 0) {
+                System.arraycopy(jours, 0, copie, (int) (base - nouvelleBase), jours.length);
+            }
+            base = nouvelleBase;
+            jours = copie;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.repository.ReservationRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registre d'inventaire par (produit, jour), table inventaire_jour.
+ * Réserver incrémente tous les jours de la période en un seul UPDATE conditionnel
+ * (reserves < quantité du produit, lue en base dans la même requête) : si une ligne n'a pas pu
+ * être incrémentée, c'est qu'un jour est complet et l'appelant annule sa transaction. Les verrous de ligne de la base sérialisent les
+ * réservations concurrentes, sur une ou plusieurs instances de l'application.
+ * Comme dans le calendrier en mémoire, une réservation occupe les jours de [dateDepart, dateRetour[.
+ */
+@Service
+public class InventaireService implements SmartInitializingSingleton {
+
+    private static final int TAILLE_LOT = 500;
+
+    private static final String INSERER_JOUR =
+            "INSERT IGNORE INTO inventaire_jour (produit_id, jour, reserves) VALUES (?, ?, ?)";
+    // Verrou exclusif sur chaque jour, pris dans l'ordre des jours : l'UPDATE qui suit ne demande
+    // aucun verrou de plus (INSERT IGNORE ne prendrait qu'un verrou partagé, d'où des interblocages)
+    private static final String VERROUILLER_JOUR =
+            "INSERT INTO inventaire_jour (produit_id, jour, reserves) VALUES (?, ?, 0) " +
+            "ON DUPLICATE KEY UPDATE reserves = reserves";
+    private static final String RESERVER =
+            "UPDATE inventaire_jour SET reserves = reserves + 1 " +
+            "WHERE produit_id = ? AND jour >= ? AND jour < ? " +
+            "AND reserves < (SELECT quantite FROM produits WHERE id = ?)";
+    private static final String LIBERER =
+            "UPDATE inventaire_jour SET reserves = reserves - 1 " +
+            "WHERE produit_id = ? AND jour >= ? AND jour < ? AND reserves > 0";
+
+    private static final String OCCUPATION_MAX =
+            "SELECT COALESCE(MAX(reserves), 0) FROM inventaire_jour WHERE produit_id = ? AND jour >= ? AND jour < ?";
+    private static final String OCCUPATION_MAX_PAR_PRODUIT =
+            "SELECT produit_id, MAX(reserves) FROM inventaire_jour WHERE jour >= ? AND jour < ? GROUP BY produit_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReservationRepository reservationRepository;
+
+    public InventaireService(JdbcTemplate jdbcTemplate, ReservationRepository reservationRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reservationRepository = reservationRepository;
+    }
+
+    // Avant le démarrage du serveur web : aucune réservation ne peut créer une ligne à 0 avant l'initialisation
+    @Override
+    public void afterSingletonsInstantiated() {
+        initialiser();
+    }
+
+    /**
+     * Initialise les lignes manquantes du registre à partir des réservations actives.
+     * Les lignes existantes font foi et ne sont pas modifiées (INSERT IGNORE) :
+     * redémarrer une instance, ou en démarrer une seconde, ne change rien.
+     */
+    public void initialiser() {
+        Map<Long, Map<LocalDate, Integer>> comptes = new HashMap<>();
+        for (Object[] ligne : reservationRepository.findPeriodesActives(LocalDate.now())) {
+            LocalDate debut = (LocalDate) ligne[2];
+            LocalDate fin = finExclue(debut, (LocalDate) ligne[3]);
+            Map<LocalDate, Integer> jours = comptes.computeIfAbsent((Long) ligne[1], id -> new HashMap<>());
+            for (LocalDate jour = debut; jour.isBefore(fin); jour = jour.plusDays(1)) {
+                jours.merge(jour, 1, Integer::sum);
+            }
+        }
+
+        List<Object[]> lignes = new ArrayList<>();
+        comptes.forEach((produitId, jours) ->
+                jours.forEach((jour, reserves) -> lignes.add(new Object[]{produitId, jour, reserves})));
+        for (int i = 0; i < lignes.size(); i += TAILLE_LOT) {
+            jdbcTemplate.batchUpdate(INSERER_JOUR, lignes.subList(i, Math.min(i + TAILLE_LOT, lignes.size())));
+        }
+        System.out.println("Registre d'inventaire initialisé : " + lignes.size() + " jours occupés");
+    }
+
+    /**
+     * Prend un véhicule sur chaque jour de la période.
+     * Doit être appelé dans une transaction : en cas d'échec, les jours déjà incrémentés
+     * sont annulés avec elle.
+     *
+     * @throws VehiculeIndisponibleException si un des jours est déjà complet
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reserver(Long produitId, LocalDate dateDepart, LocalDate dateRetour) {
+        LocalDate fin = finExclue(dateDepart, dateRetour);
+        int nombreJours = (int) (fin.toEpochDay() - dateDepart.toEpochDay());
+
+        // Crée à 0 les jours encore absents du registre et verrouille tous ceux de la période
+        List<Object[]> jours = new ArrayList<>(nombreJours);
+        for (LocalDate jour = dateDepart; jour.isBefore(fin); jour = jour.plusDays(1)) {
+            jours.add(new Object[]{produitId, jour});
+        }
+        jdbcTemplate.batchUpdate(VERROUILLER_JOUR, jours);
+
+        int incrementes = jdbcTemplate.update(RESERVER, produitId, dateDepart, fin, produitId);
+        if (incrementes != nombreJours) {
+            throw new VehiculeIndisponibleException(produitId);
+        }
+    }
+
+    // Rend le véhicule sur chaque jour de la période
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void liberer(Long produitId, LocalDate dateDepart, LocalDate dateRetour) {
+        jdbcTemplate.update(LIBERER, produitId, dateDepart, finExclue(dateDepart, dateRetour));
+    }
+
+    /**
+     * Rend les véhicules de plusieurs réservations en un seul lot d'UPDATE.
+     *
+     * @param periodes [produitId, dateDepart, dateRetour] de chaque réservation
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void libererLot(List<Object[]> periodes) {
+        List<Object[]> parametres = new ArrayList<>(periodes.size());
+        for (Object[] periode : periodes) {
+            LocalDate dateDepart = (LocalDate) periode[1];
+            parametres.add(new Object[]{periode[0], dateDepart, finExclue(dateDepart, (LocalDate) periode[2])});
+        }
+        jdbcTemplate.batchUpdate(LIBERER, parametres);
+    }
+
+    // Plus grand nombre de véhicules réservés un même jour de la période, 0 si aucun jour n'est enregistré
+    public int occupationMax(Long produitId, LocalDate dateDepart, LocalDate dateRetour) {
+        Integer max = jdbcTemplate.queryForObject(OCCUPATION_MAX, Integer.class,
+                produitId, dateDepart, finExclue(dateDepart, dateRetour));
+        return max != null ? max : 0;
+    }
+
+    // Même maximum pour toute la flotte en une requête : id produit -> véhicules réservés le jour le plus chargé
+    public Map<Long, Integer> occupationMaxParProduit(LocalDate dateDepart, LocalDate dateRetour) {
+        Map<Long, Integer> occupes = new HashMap<>();
+        jdbcTemplate.query(OCCUPATION_MAX_PAR_PRODUIT,
+                (RowCallbackHandler) rs -> occupes.put(rs.getLong(1), rs.getInt(2)),
+                dateDepart, finExclue(dateDepart, dateRetour));
+        return occupes;
+    }
+
+    // Une période d'un seul jour (départ = retour) occupe quand même ce jour
+    private static LocalDate finExclue(LocalDate dateDepart, LocalDate dateRetour) {
+        return dateRetour.isAfter(dateDepart) ? dateRetour : dateDepart.plusDays(1);
+    }
+}
@@ -0,0 +1,97 @@
+package ma.Vala.Boutique.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Export JSON en flux des grandes listes (produits, clients, paiements).
+ * Les lignes sont lues par lots successifs sur l'id (curseur keyset, sans OFFSET) et écrites
+ * au fil de l'eau dans la réponse : la mémoire utilisée ne dépend que de la taille d'un lot.
+ */
+@Service
+public class JsonExportService {
+
+    public static final int TAILLE_LOT = 500;
+
+    public enum Format {
+        JSON(MediaType.APPLICATION_JSON),
+        NDJSON(MediaType.parseMediaType("application/x-ndjson"));
+
+        private final MediaType mediaType;
+
+        Format(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        public static Format depuis(String valeur) {
+            return "ndjson".equalsIgnoreCase(valeur) ? NDJSON : JSON;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public JsonExportService(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Construit le corps de réponse en flux : un tableau JSON, ou un objet par ligne en NDJSON.
+     *
+     * @param lireLot lit le lot suivant les éléments d'id strictement supérieur au dernier écrit, triés par id
+     * @param id      extrait l'id d'un élément, pour positionner le curseur
+     */
+    public <T> StreamingResponseBody exporter(Format format,
+                                              BiFunction<Long, Pageable, Slice<T>> lireLot,
+                                              Function<T, Long> id) {
+        return out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (format == Format.NDJSON) {
+                generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            } else {
+                generator.writeStartArray();
+            }
+
+            Long dernierId = Long.MIN_VALUE;
+            Slice<T> lot;
+            do {
+                lot = lireLot.apply(dernierId, PageRequest.of(0, TAILLE_LOT));
+                for (T element : lot) {
+                    generator.writeObject(element);
+                    dernierId = id.apply(element);
+                }
+                generator.flush();
+                // Le lot est écrit : on libère les entités pour garder un tas constant
+                entityManager.clear();
+            } while (lot.hasNext());
+
+            if (format == Format.NDJSON) {
+                if (dernierId != Long.MIN_VALUE) {
+                    generator.writeRaw('\n');
+                }
+            } else {
+                generator.writeEndArray();
+            }
+            generator.close();
+        };
+    }
+}
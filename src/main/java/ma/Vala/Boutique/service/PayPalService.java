@@ -1,7 +1,10 @@
 package ma.Vala.Boutique.service;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -11,10 +14,29 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appels à l'API REST PayPal (commandes v2).
+ * Le token OAuth (client_credentials) est gardé en mémoire jusqu'à peu avant son expiration
+ * et renouvelé en tâche de fond avant qu'il n'expire : le parcours de paiement ne fait plus
+ * d'aller-retour vers /v1/oauth2/token. Quand un renouvellement est malgré tout nécessaire,
+ * les appels simultanés attendent la même demande : une seule requête de token à la fois.
+ */
 @Service
 public class PayPalService {
 
+    // Renouvellement en tâche de fond à partir de 5 min avant l'expiration, plus servi 1 min avant
+    private static final long MARGE_RENOUVELLEMENT_SECONDES = 300;
+    private static final long MARGE_EXPIRATION_SECONDES = 60;
+
+    // Échéances en System.nanoTime()
+    private record Jeton(String valeur, long renouvelerA, long expireA) {
+    }
+
     @Value("${paypal.client.id}")
     private String clientId;
 
@@ -27,8 +49,23 @@ public class PayPalService {
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
 
-    public PayPalService() {
-        this.restTemplate = new RestTemplate();
+    private volatile Jeton jeton;
+
+    // Demande de token en cours, partagée par tous les appelants qui l'attendent
+    private final Object verrou = new Object();
+    private CompletableFuture<Jeton> demandeEnCours;
+
+    private final AtomicLong demandesToken = new AtomicLong();
+    private final AtomicLong echecsToken = new AtomicLong();
+    private final AtomicLong renouvellementsEnFond = new AtomicLong();
+    private final AtomicLong tokensServisDuCache = new AtomicLong();
+    private final AtomicLong appelsRegroupes = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile long derniereDureeDemandeMs = -1;
+
+    // Client HTTP avec pool de connexions et délais (PayPalHttpConfig)
+    public PayPalService(@Qualifier("payPalRestTemplate") RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
         this.objectMapper = new ObjectMapper();
     }
 
@@ -39,8 +76,97 @@ public class PayPalService {
                 : "https://api-m.paypal.com";
     }
 
-    // 1. Obtenir un token d'accès
+    // 1. Obtenir un token d'accès (en cache tant qu'il n'est pas proche de l'expiration)
     public String getAccessToken() {
+        Jeton courant = jeton;
+        if (courant != null && System.nanoTime() - courant.expireA() < 0) {
+            tokensServisDuCache.incrementAndGet();
+            return courant.valeur();
+        }
+        try {
+            return renouveler().join().valeur();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    // Renouvelle le token avant son expiration, sans faire attendre les paiements en cours
+    @Scheduled(fixedDelayString = "${app.paypal.token.verification-ms:30000}")
+    public void renouvelerSiNecessaire() {
+        Jeton courant = jeton;
+        if (courant == null || System.nanoTime() - courant.renouvelerA() < 0) {
+            return;
+        }
+        renouvellementsEnFond.incrementAndGet();
+        try {
+            renouveler().join();
+        } catch (CompletionException e) {
+            // Le token actuel reste servi jusqu'à son expiration ; nouvel essai au prochain passage
+            System.err.println("Échec du renouvellement du token PayPal: " + e.getCause().getMessage());
+        }
+    }
+
+    // Token refusé par PayPal (révoqué) : le prochain appel en demandera un nouveau
+    public void invaliderToken(String valeur) {
+        synchronized (verrou) {
+            Jeton courant = jeton;
+            if (courant != null && courant.valeur().equals(valeur)) {
+                jeton = null;
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistiquesToken() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("demandesToken", demandesToken.get());
+        stats.put("echecsToken", echecsToken.get());
+        stats.put("renouvellementsEnFond", renouvellementsEnFond.get());
+        stats.put("tokensServisDuCache", tokensServisDuCache.get());
+        stats.put("appelsRegroupes", appelsRegroupes.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("derniereDureeDemandeMs", derniereDureeDemandeMs);
+        Jeton courant = jeton;
+        stats.put("expireDansSecondes", courant == null ? null
+                : TimeUnit.NANOSECONDS.toSeconds(courant.expireA() - System.nanoTime()));
+        return stats;
+    }
+
+    /**
+     * Lance une demande de token, ou rejoint celle déjà en cours.
+     * L'appelant qui lance la demande l'exécute lui-même ; les autres attendent son résultat.
+     */
+    private CompletableFuture<Jeton> renouveler() {
+        CompletableFuture<Jeton> demande;
+        synchronized (verrou) {
+            if (demandeEnCours != null) {
+                appelsRegroupes.incrementAndGet();
+                return demandeEnCours;
+            }
+            demande = new CompletableFuture<>();
+            demandeEnCours = demande;
+        }
+
+        try {
+            Jeton nouveau = demanderToken();
+            synchronized (verrou) {
+                jeton = nouveau;
+                demandeEnCours = null;
+            }
+            demande.complete(nouveau);
+        } catch (RuntimeException e) {
+            echecsToken.incrementAndGet();
+            synchronized (verrou) {
+                demandeEnCours = null;
+            }
+            demande.completeExceptionally(e);
+        }
+        return demande;
+    }
+
+    private Jeton demanderToken() {
+        demandesToken.incrementAndGet();
+        long debut = System.nanoTime();
         try {
             String auth = Base64.getEncoder()
                     .encodeToString((clientId + ":" + clientSecret).getBytes());
@@ -62,22 +188,56 @@ public class PayPalService {
             );
 
             JsonNode jsonResponse = objectMapper.readTree(response.getBody());
-            return jsonResponse.get("access_token").asText();
+            long fin = System.nanoTime();
+            derniereDureeDemandeMs = TimeUnit.NANOSECONDS.toMillis(fin - debut);
+
+            // Durée de vie annoncée par PayPal (quelques heures) ; marges réduites pour un token court
+            long duree = jsonResponse.path("expires_in").asLong(0);
+            long renouvelerApres = duree - Math.min(MARGE_RENOUVELLEMENT_SECONDES, duree / 5);
+            long expireApres = duree - Math.min(MARGE_EXPIRATION_SECONDES, duree / 10);
+            return new Jeton(jsonResponse.get("access_token").asText(),
+                    fin + TimeUnit.SECONDS.toNanos(renouvelerApres),
+                    fin + TimeUnit.SECONDS.toNanos(expireApres));
 
         } catch (Exception e) {
             throw new RuntimeException("Erreur lors de l'obtention du token PayPal", e);
         }
     }
 
-    // 2. Créer un paiement
-    public Map<String, Object> createPayment(Double amount, String currency, String returnUrl, String cancelUrl, String description) {
+    /**
+     * Appel authentifié à l'API PayPal. Si le token est refusé (401), il est invalidé
+     * et l'appel est refait une fois avec un nouveau token.
+     */
+    private ResponseEntity<String> appeler(String chemin, HttpMethod methode, Object corps) {
+        return appeler(chemin, methode, corps, null);
+    }
+
+    // requestId : en-tête PayPal-Request-Id, PayPal renvoie la même réponse pour une requête répétée
+    private ResponseEntity<String> appeler(String chemin, HttpMethod methode, Object corps, String requestId) {
+        String accessToken = getAccessToken();
         try {
-            String accessToken = getAccessToken();
+            return restTemplate.exchange(getBaseUrl() + chemin, methode, requete(accessToken, corps, requestId), String.class);
+        } catch (HttpClientErrorException.Unauthorized e) {
+            invaliderToken(accessToken);
+            return restTemplate.exchange(getBaseUrl() + chemin, methode, requete(getAccessToken(), corps, requestId), String.class);
+        }
+    }
 
-            HttpHeaders headers = new HttpHeaders();
+    private static HttpEntity<Object> requete(String accessToken, Object corps, String requestId) {
+        HttpHeaders headers = new HttpHeaders();
+        if (corps != null) {
             headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + accessToken);
+        }
+        headers.set("Authorization", "Bearer " + accessToken);
+        if (requestId != null) {
+            headers.set("PayPal-Request-Id", requestId);
+        }
+        return new HttpEntity<>(corps, headers);
+    }
 
+    // 2. Créer un paiement
+    public Map<String, Object> createPayment(Double amount, String currency, String returnUrl, String cancelUrl, String description) {
+        try {
             // Créer le payload pour PayPal
             Map<String, Object> payment = new HashMap<>();
             payment.put("intent", "CAPTURE");
@@ -98,14 +258,7 @@ public class PayPalService {
             applicationContext.put("cancel_url", cancelUrl);
             payment.put("application_context", applicationContext);
 
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payment, headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    getBaseUrl() + "/v2/checkout/orders",
-                    HttpMethod.POST,
-                    entity,
-                    String.class
-            );
+            ResponseEntity<String> response = appeler("/v2/checkout/orders", HttpMethod.POST, payment);
 
             JsonNode jsonResponse = objectMapper.readTree(response.getBody());
 
@@ -130,60 +283,46 @@ public class PayPalService {
     }
 
     // 3. Capturer le paiement après approbation
+    // PayPal-Request-Id : l'orderId, quel que soit l'appelant ; une capture répétée de la commande
+    // (nouvel essai après un délai dépassé) rejoue la réponse de la première
     public Map<String, Object> capturePayment(String orderId) {
         try {
-            String accessToken = getAccessToken();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>("{}", headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    getBaseUrl() + "/v2/checkout/orders/" + orderId + "/capture",
-                    HttpMethod.POST,
-                    entity,
-                    String.class
-            );
-
-            JsonNode jsonResponse = objectMapper.readTree(response.getBody());
-
-            Map<String, Object> result = new HashMap<>();
-            result.put("id", jsonResponse.get("id").asText());
-            result.put("status", jsonResponse.get("status").asText());
-
-            // Extraire les détails de la capture
-            if (jsonResponse.has("purchase_units")) {
-                JsonNode captureDetails = jsonResponse.get("purchase_units").get(0)
-                        .get("payments").get("captures").get(0);
-                result.put("captureId", captureDetails.get("id").asText());
-                result.put("amount", captureDetails.get("amount").get("value").asText());
+            ResponseEntity<String> response;
+            try {
+                response = appeler("/v2/checkout/orders/" + orderId + "/capture", HttpMethod.POST, "{}", orderId);
+            } catch (HttpClientErrorException.UnprocessableEntity e) {
+                // Capturée par une requête que PayPal ne rejoue pas (clé expirée chez PayPal) : la commande fait foi
+                if (e.getResponseBodyAsString().contains("ORDER_ALREADY_CAPTURED")) {
+                    response = appeler("/v2/checkout/orders/" + orderId, HttpMethod.GET, null);
+                } else {
+                    throw e;
+                }
             }
-
-            return result;
+            return lireCapture(objectMapper.readTree(response.getBody()));
 
         } catch (Exception e) {
             throw new RuntimeException("Erreur lors de la capture du paiement PayPal", e);
         }
     }
 
+    // Réponse de capture ou commande : statut, et détails de la capture si elle a eu lieu
+    private static Map<String, Object> lireCapture(JsonNode jsonResponse) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("id", jsonResponse.get("id").asText());
+        result.put("status", jsonResponse.get("status").asText());
+
+        JsonNode captureDetails = jsonResponse.path("purchase_units").path(0).path("payments").path("captures").path(0);
+        if (!captureDetails.isMissingNode()) {
+            result.put("captureId", captureDetails.get("id").asText());
+            result.put("amount", captureDetails.get("amount").get("value").asText());
+        }
+        return result;
+    }
+
     // 4. Vérifier le statut d'un paiement
     public Map<String, Object> getPaymentDetails(String orderId) {
         try {
-            String accessToken = getAccessToken();
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + accessToken);
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(
-                    getBaseUrl() + "/v2/checkout/orders/" + orderId,
-                    HttpMethod.GET,
-                    entity,
-                    String.class
-            );
+            ResponseEntity<String> response = appeler("/v2/checkout/orders/" + orderId, HttpMethod.GET, null);
 
             JsonNode jsonResponse = objectMapper.readTree(response.getBody());
 
@@ -197,4 +336,4 @@ public class PayPalService {
             throw new RuntimeException("Erreur lors de la vérification du paiement PayPal", e);
         }
     }
-}
\ No newline at end of file
+}
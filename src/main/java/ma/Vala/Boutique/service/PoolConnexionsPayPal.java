@@ -0,0 +1,85 @@
+package ma.Vala.Boutique.service;
+
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suivi du pool de connexions HTTP vers PayPal, pour le dimensionner sur le pic de paiements.
+ * Intercepteur du RestTemplate PayPal : à chaque appel, relève l'occupation du pool
+ * (connexions prêtées, requêtes en attente d'une connexion) et garde les pics observés,
+ * ainsi que le nombre d'appels abandonnés faute de connexion libre dans le délai.
+ */
+public class PoolConnexionsPayPal implements ClientHttpRequestInterceptor {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final AtomicLong appels = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+    private final AtomicLong attentesPoolExpirees = new AtomicLong();
+    private final AtomicLong dureeTotaleMs = new AtomicLong();
+    private final AtomicInteger picConnexionsPretees = new AtomicInteger();
+    private final AtomicInteger picEnAttente = new AtomicInteger();
+
+    public PoolConnexionsPayPal(PoolingHttpClientConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        appels.incrementAndGet();
+        long debut = System.nanoTime();
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            // La connexion de cet appel est encore prêtée tant que la réponse n'a pas été lue
+            relever();
+            return response;
+        } catch (ConnectionRequestTimeoutException e) {
+            attentesPoolExpirees.incrementAndGet();
+            echecs.incrementAndGet();
+            relever();
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            echecs.incrementAndGet();
+            throw e;
+        } finally {
+            dureeTotaleMs.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - debut));
+        }
+    }
+
+    private void relever() {
+        PoolStats stats = connectionManager.getTotalStats();
+        picConnexionsPretees.accumulateAndGet(stats.getLeased(), Math::max);
+        picEnAttente.accumulateAndGet(stats.getPending(), Math::max);
+    }
+
+    public Map<String, Object> getStatistiques() {
+        PoolStats stats = connectionManager.getTotalStats();
+        long total = appels.get();
+
+        Map<String, Object> resultat = new HashMap<>();
+        resultat.put("max", stats.getMax());
+        resultat.put("connexionsPretees", stats.getLeased());
+        resultat.put("connexionsDisponibles", stats.getAvailable());
+        resultat.put("enAttente", stats.getPending());
+        resultat.put("saturation", stats.getMax() == 0 ? 0.0 : (double) stats.getLeased() / stats.getMax());
+        resultat.put("picConnexionsPretees", picConnexionsPretees.get());
+        resultat.put("picEnAttente", picEnAttente.get());
+        resultat.put("appels", total);
+        resultat.put("echecs", echecs.get());
+        resultat.put("attentesPoolExpirees", attentesPoolExpirees.get());
+        resultat.put("dureeMoyenneMs", total == 0 ? 0.0 : (double) dureeTotaleMs.get() / total);
+        return resultat;
+    }
+}
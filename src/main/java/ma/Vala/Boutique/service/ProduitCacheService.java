@@ -0,0 +1,121 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.events.ProduitModifieEvent;
+import ma.Vala.Boutique.repository.ProduitRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache en lecture (read-through) des produits devant ProduitRepository.findById.
+ * Borné en taille (éviction LRU) et en durée de vie (TTL), invalidé à chaque
+ * {@link ProduitModifieEvent} publié par les endpoints de création/modification/suppression.
+ * Les appelants reçoivent toujours une copie : modifier le produit retourné n'altère pas le cache.
+ */
+@Service
+public class ProduitCacheService {
+
+    private record Entree(Produit produit, long expireA) {
+    }
+
+    private final ProduitRepository produitRepository;
+    private final int tailleMax;
+    private final long ttlNanos;
+
+    // LinkedHashMap en ordre d'accès : l'entrée la moins récemment lue est évincée en premier
+    private final LinkedHashMap<Long, Entree> entrees;
+
+    // Incrémenté à chaque invalidation, pour ne pas remettre en cache une lecture devenue obsolète
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ProduitCacheService(ProduitRepository produitRepository,
+                               @Value("${app.catalogue.cache.taille-max:500}") int tailleMax,
+                               @Value("${app.catalogue.cache.ttl-secondes:300}") long ttlSecondes) {
+        this.produitRepository = produitRepository;
+        this.tailleMax = tailleMax;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSecondes);
+        this.entrees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entree> eldest) {
+                if (size() > ProduitCacheService.this.tailleMax) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public Optional<Produit> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+
+        synchronized (entrees) {
+            Entree entree = entrees.get(id);
+            if (entree != null) {
+                if (entree.expireA() - System.nanoTime() > 0) {
+                    hits.incrementAndGet();
+                    return Optional.of(entree.produit().toBuilder().build());
+                }
+                entrees.remove(id);
+                evictions.incrementAndGet();
+            }
+        }
+
+        misses.incrementAndGet();
+        long generationLecture = generation.get();
+        Optional<Produit> produit = produitRepository.findById(id);
+        produit.ifPresent(p -> {
+            Entree entree = new Entree(p.toBuilder().build(), System.nanoTime() + ttlNanos);
+            synchronized (entrees) {
+                if (generation.get() == generationLecture) {
+                    entrees.put(id, entree);
+                }
+            }
+        });
+        return produit;
+    }
+
+    public void invalider(Long id) {
+        synchronized (entrees) {
+            generation.incrementAndGet();
+            entrees.remove(id);
+        }
+        invalidations.incrementAndGet();
+    }
+
+    @EventListener
+    public void onProduitModifie(ProduitModifieEvent event) {
+        invalider(event.produitId());
+    }
+
+    public Map<String, Object> getStatistiques() {
+        long totalLectures = hits.get() + misses.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", totalLectures == 0 ? 0.0 : (double) hits.get() / totalLectures);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        synchronized (entrees) {
+            stats.put("taille", entrees.size());
+        }
+        stats.put("tailleMax", tailleMax);
+        stats.put("ttlSecondes", TimeUnit.NANOSECONDS.toSeconds(ttlNanos));
+        return stats;
+    }
+}
@@ -0,0 +1,223 @@
+package ma.Vala.Boutique.service;
+
+import jakarta.annotation.PreDestroy;
+import ma.Vala.Boutique.cloudinary.CloudinaryService;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.entities.Produit.StatutImage;
+import ma.Vala.Boutique.events.ProduitModifieEvent;
+import ma.Vala.Boutique.repository.ProduitRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Pipeline asynchrone des images produit.
+ * Le contrôleur sauvegarde le produit tout de suite (imageStatut = PENDING) et confie l'image,
+ * copiée dans un fichier temporaire, à un pool dédié qui l'envoie à Cloudinary, met à jour le
+ * produit (READY ou FAILED) puis supprime l'ancienne image. Les clients suivent l'état en
+ * interrogeant le produit ou en s'abonnant aux notifications SSE.
+ */
+@Service
+public class ProduitImageService {
+
+    private static final long TIMEOUT_SSE_MS = 120_000L;
+
+    private final CloudinaryService cloudinaryService;
+    private final ProduitRepository produitRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService imageExecutor;
+
+    // Dernière demande d'upload par produit : seule la plus récente peut s'appliquer
+    private final Map<Long, Long> derniereDemande = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<Long, List<SseEmitter>> abonnes = new ConcurrentHashMap<>();
+
+    public ProduitImageService(CloudinaryService cloudinaryService,
+                               ProduitRepository produitRepository,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${app.images.workers:4}") int workers) {
+        this.cloudinaryService = cloudinaryService;
+        this.produitRepository = produitRepository;
+        this.eventPublisher = eventPublisher;
+        this.imageExecutor = Executors.newFixedThreadPool(workers);
+    }
+
+    @PreDestroy
+    public void arreter() {
+        imageExecutor.shutdown();
+    }
+
+    /**
+     * Copie l'image dans un fichier temporaire (sans la charger en mémoire), passe le produit
+     * en PENDING et planifie l'upload. L'ancienne image n'est supprimée qu'une fois la nouvelle en place.
+     * Si l'upload ne peut pas être planifié, le produit passe en FAILED (il ne reste pas PENDING).
+     */
+    public void planifierUpload(Long produitId, MultipartFile image, String ancienPublicId) throws IOException {
+        long demande = sequence.incrementAndGet();
+        derniereDemande.put(produitId, demande);
+
+        Path fichier = null;
+        try {
+            fichier = Files.createTempFile("produit-" + produitId + "-", ".img");
+            image.transferTo(fichier);
+            produitRepository.updateImageStatut(produitId, StatutImage.PENDING);
+            Path aEnvoyer = fichier;
+            imageExecutor.execute(() -> traiterUpload(produitId, demande, aEnvoyer, ancienPublicId));
+        } catch (IOException | RuntimeException e) {
+            if (fichier != null) {
+                Files.deleteIfExists(fichier);
+            }
+            if (appliquer(produitId, demande, () -> produitRepository.updateImageStatut(produitId, StatutImage.FAILED))) {
+                publier(produitId);
+            }
+            throw e;
+        }
+    }
+
+    public void planifierSuppression(String publicId) {
+        if (publicId != null) {
+            imageExecutor.execute(() -> supprimer(publicId));
+        }
+    }
+
+    private void traiterUpload(Long produitId, long demande, Path fichier, String ancienPublicId) {
+        Map<String, Object> uploadResult;
+        try {
+            uploadResult = cloudinaryService.uploadFile(fichier.toFile(), "products");
+        } catch (Exception e) {
+            System.err.println("Upload asynchrone échoué pour le produit " + produitId + ": " + e.getMessage());
+            if (appliquer(produitId, demande, () -> produitRepository.updateImageStatut(produitId, StatutImage.FAILED))) {
+                publier(produitId);
+            }
+            return;
+        } finally {
+            try {
+                Files.deleteIfExists(fichier);
+            } catch (IOException e) {
+                System.err.println("Fichier temporaire non supprimé: " + fichier);
+            }
+        }
+
+        String imageUrl = uploadResult.get("secure_url").toString();
+        String publicId = uploadResult.get("public_id").toString();
+        boolean applique = appliquer(produitId, demande,
+                () -> produitRepository.updateImage(produitId, imageUrl, publicId, StatutImage.READY));
+
+        if (applique) {
+            publier(produitId);
+            supprimer(ancienPublicId);
+        } else {
+            // Remplacée entre-temps par un upload plus récent, ou produit supprimé
+            supprimer(publicId);
+        }
+    }
+
+    // Applique la mise à jour seulement si la demande est toujours la plus récente pour ce produit
+    private boolean appliquer(Long produitId, long demande, IntSupplier miseAJour) {
+        synchronized (derniereDemande) {
+            if (!Objects.equals(derniereDemande.get(produitId), demande)) {
+                return false;
+            }
+            derniereDemande.remove(produitId);
+            return miseAJour.getAsInt() > 0;
+        }
+    }
+
+    private void supprimer(String publicId) {
+        if (publicId == null) {
+            return;
+        }
+        try {
+            cloudinaryService.deleteFile(publicId);
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la suppression de l'image " + publicId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recopie dans le produit les colonnes d'image telles qu'en base : save() ne les écrit pas
+     * (voir Produit) et un upload asynchrone a pu les modifier depuis la lecture du produit.
+     */
+    public Produit avecImageActuelle(Produit produit) {
+        List<Object[]> image = produitRepository.findImage(produit.getId());
+        if (!image.isEmpty()) {
+            produit.setImageUrl((String) image.get(0)[0]);
+            produit.setImagePublicId((String) image.get(0)[1]);
+            produit.setImageStatut((StatutImage) image.get(0)[2]);
+        }
+        return produit;
+    }
+
+    private void publier(Long produitId) {
+        produitRepository.findById(produitId).ifPresent(produit -> {
+            eventPublisher.publishEvent(ProduitModifieEvent.sauvegarde(produit));
+            notifier(produit);
+        });
+    }
+
+    // ==========================
+    // 🔹 Suivi de l'état
+    // ==========================
+
+    public static Map<String, Object> etat(Produit produit) {
+        Map<String, Object> etat = new HashMap<>();
+        etat.put("produitId", produit.getId());
+        etat.put("imageStatut", produit.getImageStatut() != null ? produit.getImageStatut() : StatutImage.READY);
+        etat.put("imageUrl", produit.getImageUrl());
+        return etat;
+    }
+
+    /**
+     * Abonnement SSE : un seul événement "image" est envoyé quand l'image quitte l'état PENDING.
+     */
+    public SseEmitter abonner(Long produitId) {
+        SseEmitter emitter = new SseEmitter(TIMEOUT_SSE_MS);
+        abonnes.computeIfAbsent(produitId, id -> new CopyOnWriteArrayList<>()).add(emitter);
+        Runnable desabonner = () -> abonnes.computeIfPresent(produitId, (id, liste) -> {
+            liste.remove(emitter);
+            return liste.isEmpty() ? null : liste;
+        });
+        emitter.onCompletion(desabonner);
+        emitter.onTimeout(desabonner);
+        emitter.onError(e -> desabonner.run());
+
+        // Relu après l'inscription : l'upload a pu se terminer juste avant
+        Optional<Produit> produit = produitRepository.findById(produitId);
+        if (produit.isEmpty()) {
+            emitter.complete();
+        } else if (produit.get().getImageStatut() != StatutImage.PENDING) {
+            envoyer(emitter, produit.get());
+        }
+        return emitter;
+    }
+
+    private void notifier(Produit produit) {
+        List<SseEmitter> emitters = abonnes.remove(produit.getId());
+        if (emitters != null) {
+            emitters.forEach(emitter -> envoyer(emitter, produit));
+        }
+    }
+
+    private void envoyer(SseEmitter emitter, Produit produit) {
+        try {
+            emitter.send(SseEmitter.event().name("image").data(etat(produit)));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package ma.Vala.Boutique.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import ma.Vala.Boutique.cloudinary.CloudinaryService;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.events.ProduitModifieEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Import en masse de véhicules : un manifeste (CSV ou NDJSON) et une archive zip des images.
+ * Les images sont envoyées à Cloudinary en parallèle (nombre d'uploads simultanés borné),
+ * puis les produits valides sont insérés par lots JDBC. Chaque ligne du manifeste reçoit
+ * son propre résultat : une ligne en erreur n'empêche pas l'import des autres.
+ */
+@Service
+public class ProduitImportService {
+
+    private static final String SQL_INSERT = "INSERT INTO produits " +
+            "(nom, prix, description, couleur, annee, quantite, categorie, marque, image_url, image_public_id, image_statut) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int TAILLE_LOT_INSERT = 100;
+
+    public enum Statut { IMPORTE, ERREUR }
+
+    public record ResultatLigne(int ligne, String nom, Statut statut, Long produitId, String message) {
+    }
+
+    public record ResultatImport(int total, int importes, int erreurs, List<ResultatLigne> resultats) {
+    }
+
+    // Ligne du manifeste en cours de traitement
+    private static class LigneImport {
+        private final int numero;
+        private final Map<String, String> valeurs;
+        private Produit produit;
+        private String image;
+        private String erreur;
+
+        LigneImport(int numero, Map<String, String> valeurs) {
+            this.numero = numero;
+            this.valeurs = valeurs;
+        }
+
+        boolean valide() {
+            return erreur == null;
+        }
+    }
+
+    private final CloudinaryService cloudinaryService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService uploadExecutor;
+    // Bornes de l'archive d'images, vérifiées pendant l'extraction (archive piégée : zip bomb)
+    private final int imagesMax;
+    private final long tailleMaxImages;
+
+    public ProduitImportService(CloudinaryService cloudinaryService,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                Validator validator,
+                                ObjectMapper objectMapper,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${app.import.uploads-paralleles:8}") int uploadsParalleles,
+                                @Value("${app.import.images.nombre-max:2000}") int imagesMax,
+                                @Value("${app.import.images.taille-max-totale:2GB}") DataSize tailleMaxImages) {
+        this.cloudinaryService = cloudinaryService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.uploadExecutor = Executors.newFixedThreadPool(uploadsParalleles);
+        this.imagesMax = imagesMax;
+        this.tailleMaxImages = tailleMaxImages.toBytes();
+    }
+
+    @PreDestroy
+    public void arreter() {
+        uploadExecutor.shutdown();
+    }
+
+    public ResultatImport importer(MultipartFile manifeste, MultipartFile images) throws IOException {
+        List<LigneImport> lignes = lireManifeste(manifeste);
+        if (lignes.isEmpty()) {
+            throw new IllegalArgumentException("Le manifeste ne contient aucune ligne");
+        }
+
+        Path dossier = Files.createTempDirectory("import-produits-");
+        try {
+            Map<String, Path> fichiers = images == null || images.isEmpty()
+                    ? Map.of()
+                    : extraireImages(images, dossier);
+
+            // 1. Validation de chaque ligne
+            for (LigneImport ligne : lignes) {
+                valider(ligne, fichiers);
+            }
+
+            // 2. Upload des images en parallèle, borné par la taille du pool
+            List<CompletableFuture<Void>> uploads = new ArrayList<>();
+            for (LigneImport ligne : lignes) {
+                if (ligne.valide() && ligne.image != null) {
+                    uploads.add(CompletableFuture.runAsync(() -> uploader(ligne, fichiers.get(ligne.image)), uploadExecutor));
+                }
+            }
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+
+            // 3. Insertion des produits valides par lots JDBC
+            List<LigneImport> aInserer = lignes.stream().filter(LigneImport::valide).toList();
+            for (int debut = 0; debut < aInserer.size(); debut += TAILLE_LOT_INSERT) {
+                inserer(aInserer.subList(debut, Math.min(debut + TAILLE_LOT_INSERT, aInserer.size())));
+            }
+        } finally {
+            supprimerDossier(dossier);
+        }
+
+        // 4. Index, caches et version du catalogue
+        lignes.stream()
+                .filter(LigneImport::valide)
+                .forEach(ligne -> eventPublisher.publishEvent(ProduitModifieEvent.sauvegarde(ligne.produit)));
+
+        List<ResultatLigne> resultats = lignes.stream()
+                .map(ligne -> ligne.valide()
+                        ? new ResultatLigne(ligne.numero, ligne.produit.getNom(), Statut.IMPORTE, ligne.produit.getId(), null)
+                        : new ResultatLigne(ligne.numero, ligne.valeurs.get("nom"), Statut.ERREUR, null, ligne.erreur))
+                .toList();
+        int importes = (int) resultats.stream().filter(r -> r.statut() == Statut.IMPORTE).count();
+        System.out.println("Import produits : " + importes + "/" + resultats.size() + " lignes importées");
+        return new ResultatImport(resultats.size(), importes, resultats.size() - importes, resultats);
+    }
+
+    // ==========================
+    // 🔹 Étapes de l'import
+    // ==========================
+
+    private void valider(LigneImport ligne, Map<String, Path> fichiers) {
+        Map<String, String> v = ligne.valeurs;
+        try {
+            ligne.produit = Produit.builder()
+                    .nom(texte(v.get("nom")))
+                    .prix(v.get("prix") == null ? null : Double.parseDouble(v.get("prix").trim()))
+                    .description(texte(v.get("description")))
+                    .couleur(texte(v.get("couleur")))
+                    .annee(texte(v.get("annee")) == null ? null : Integer.parseInt(v.get("annee").trim()))
+                    .quantite(v.get("quantite") == null ? null : Integer.parseInt(v.get("quantite").trim()))
+                    .categorie(texte(v.get("categorie")))
+                    .marque(texte(v.get("marque")))
+                    .build();
+        } catch (NumberFormatException e) {
+            ligne.erreur = "Format de nombre invalide: " + e.getMessage();
+            return;
+        }
+
+        if (ligne.produit.getPrix() == null || ligne.produit.getQuantite() == null) {
+            ligne.erreur = "Le prix et la quantité sont obligatoires";
+            return;
+        }
+
+        Set<ConstraintViolation<Produit>> violations = validator.validate(ligne.produit);
+        if (!violations.isEmpty()) {
+            ligne.erreur = violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            return;
+        }
+
+        String image = texte(v.get("image"));
+        if (image != null) {
+            image = Paths.get(image).getFileName().toString();
+            if (!fichiers.containsKey(image)) {
+                ligne.erreur = "Image introuvable dans l'archive: " + image;
+                return;
+            }
+            ligne.image = image;
+        }
+    }
+
+    private void uploader(LigneImport ligne, Path fichier) {
+        try {
+            Map<String, Object> uploadResult = cloudinaryService.uploadFile(fichier.toFile(), "products");
+            ligne.produit.setImageUrl(uploadResult.get("secure_url").toString());
+            ligne.produit.setImagePublicId(uploadResult.get("public_id").toString());
+            ligne.produit.setImageStatut(Produit.StatutImage.READY);
+        } catch (Exception e) {
+            ligne.erreur = "Erreur Cloudinary lors de l'upload : " + e.getMessage();
+        }
+    }
+
+    private void inserer(List<LigneImport> lot) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    con -> con.prepareStatement(SQL_INSERT, Statement.RETURN_GENERATED_KEYS),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            Produit p = lot.get(i).produit;
+                            ps.setString(1, p.getNom());
+                            ps.setDouble(2, p.getPrix());
+                            ps.setString(3, p.getDescription());
+                            ps.setString(4, p.getCouleur());
+                            if (p.getAnnee() != null) {
+                                ps.setInt(5, p.getAnnee());
+                            } else {
+                                ps.setNull(5, Types.INTEGER);
+                            }
+                            ps.setInt(6, p.getQuantite());
+                            ps.setString(7, p.getCategorie());
+                            ps.setString(8, p.getMarque());
+                            ps.setString(9, p.getImageUrl());
+                            ps.setString(10, p.getImagePublicId());
+                            ps.setString(11, p.getImageUrl() != null ? Produit.StatutImage.READY.name() : null);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return lot.size();
+                        }
+                    },
+                    keyHolder));
+        } catch (Exception e) {
+            // Lot annulé : aucune ligne insérée, on libère les images déjà envoyées
+            for (LigneImport ligne : lot) {
+                ligne.erreur = "Erreur lors de l'insertion : " + e.getMessage();
+                supprimerImage(ligne.produit.getImagePublicId());
+            }
+            return;
+        }
+
+        List<Map<String, Object>> cles = keyHolder.getKeyList();
+        for (int i = 0; i < lot.size(); i++) {
+            Object cle = cles.get(i).values().iterator().next();
+            lot.get(i).produit.setId(((Number) cle).longValue());
+        }
+    }
+
+    private void supprimerImage(String publicId) {
+        try {
+            cloudinaryService.deleteFile(publicId);
+        } catch (IOException e) {
+            System.err.println("Image orpheline sur Cloudinary (" + publicId + "): " + e.getMessage());
+        }
+    }
+
+    // ==========================
+    // 🔹 Lecture des fichiers
+    // ==========================
+
+    private List<LigneImport> lireManifeste(MultipartFile manifeste) throws IOException {
+        if (manifeste == null || manifeste.isEmpty()) {
+            throw new IllegalArgumentException("Manifeste requis");
+        }
+        String nom = Optional.ofNullable(manifeste.getOriginalFilename()).orElse("").toLowerCase(Locale.ROOT);
+        boolean ndjson = nom.endsWith(".ndjson") || nom.endsWith(".jsonl")
+                || "application/x-ndjson".equals(manifeste.getContentType());
+
+        List<LigneImport> lignes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(manifeste.getInputStream(), StandardCharsets.UTF_8))) {
+            if (ndjson) {
+                String ligne;
+                int numero = 0;
+                while ((ligne = reader.readLine()) != null) {
+                    numero++;
+                    if (ligne.isBlank()) {
+                        continue;
+                    }
+                    Map<String, Object> objet = objectMapper.readValue(ligne, new TypeReference<>() {
+                    });
+                    Map<String, String> valeurs = new HashMap<>();
+                    objet.forEach((cle, valeur) -> valeurs.put(cle, valeur == null ? null : valeur.toString()));
+                    lignes.add(new LigneImport(numero, valeurs));
+                }
+            } else {
+                lireCsv(reader, lignes);
+            }
+        }
+        return lignes;
+    }
+
+    // CSV avec ligne d'en-tête, séparateur ',' ou ';', champs éventuellement entre guillemets
+    private void lireCsv(BufferedReader reader, List<LigneImport> lignes) throws IOException {
+        String entete = reader.readLine();
+        if (entete == null) {
+            return;
+        }
+        entete = entete.replace("\uFEFF", "");
+        char separateur = entete.indexOf(';') >= 0 && entete.indexOf(',') < 0 ? ';' : ',';
+        List<String> colonnes = decouperCsv(entete, separateur).stream()
+                .map(c -> c.trim().toLowerCase(Locale.ROOT))
+                .toList();
+
+        String ligne;
+        int numero = 1;
+        while ((ligne = reader.readLine()) != null) {
+            numero++;
+            if (ligne.isBlank()) {
+                continue;
+            }
+            List<String> champs = decouperCsv(ligne, separateur);
+            Map<String, String> valeurs = new HashMap<>();
+            for (int i = 0; i < colonnes.size() && i < champs.size(); i++) {
+                valeurs.put(colonnes.get(i), champs.get(i));
+            }
+            lignes.add(new LigneImport(numero, valeurs));
+        }
+    }
+
+    private static List<String> decouperCsv(String ligne, char separateur) {
+        List<String> champs = new ArrayList<>();
+        StringBuilder champ = new StringBuilder();
+        boolean entreGuillemets = false;
+        for (int i = 0; i < ligne.length(); i++) {
+            char c = ligne.charAt(i);
+            if (entreGuillemets) {
+                if (c == '"' && i + 1 < ligne.length() && ligne.charAt(i + 1) == '"') {
+                    champ.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreGuillemets = false;
+                } else {
+                    champ.append(c);
+                }
+            } else if (c == '"') {
+                entreGuillemets = true;
+            } else if (c == separateur) {
+                champs.add(champ.toString());
+                champ.setLength(0);
+            } else {
+                champ.append(c);
+            }
+        }
+        champs.add(champ.toString());
+        return champs;
+    }
+
+    /**
+     * Extrait les images sur disque (pas en mémoire), indexées par nom de fichier sans chemin.
+     * Le nombre d'images et leur taille totale décompressée sont bornés, comptés sur les octets
+     * réellement lus (la taille annoncée par l'archive n'est pas fiable). Deux images de même nom
+     * dans des dossiers différents rendraient le manifeste ambigu : l'archive est refusée.
+     */
+    private Map<String, Path> extraireImages(MultipartFile archive, Path dossier) throws IOException {
+        Map<String, Path> fichiers = new HashMap<>();
+        Map<String, String> cheminsParNom = new HashMap<>();
+        long total = 0;
+        byte[] tampon = new byte[8192];
+        try (InputStream in = archive.getInputStream(); ZipInputStream zip = new ZipInputStream(in)) {
+            ZipEntry entree;
+            while ((entree = zip.getNextEntry()) != null) {
+                if (entree.isDirectory()) {
+                    continue;
+                }
+                if (fichiers.size() >= imagesMax) {
+                    throw new IllegalArgumentException("L'archive contient plus de " + imagesMax + " images");
+                }
+                String nom = Paths.get(entree.getName()).getFileName().toString();
+                String autre = cheminsParNom.putIfAbsent(nom, entree.getName());
+                if (autre != null) {
+                    throw new IllegalArgumentException("Nom d'image en double dans l'archive : "
+                            + autre + " et " + entree.getName());
+                }
+
+                Path cible = dossier.resolve(UUID.randomUUID() + "_" + nom);
+                try (var out = Files.newOutputStream(cible)) {
+                    int lus;
+                    while ((lus = zip.read(tampon)) != -1) {
+                        total += lus;
+                        if (total > tailleMaxImages) {
+                            throw new IllegalArgumentException("Images trop volumineuses une fois décompressées (maximum "
+                                    + DataSize.ofBytes(tailleMaxImages).toMegabytes() + "MB)");
+                        }
+                        out.write(tampon, 0, lus);
+                    }
+                }
+                fichiers.put(nom, cible);
+            }
+        }
+        return fichiers;
+    }
+
+    private static void supprimerDossier(Path dossier) {
+        try (var contenu = Files.walk(dossier)) {
+            contenu.sorted(Comparator.reverseOrder()).forEach(chemin -> chemin.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Impossible de supprimer le dossier temporaire " + dossier + ": " + e.getMessage());
+        }
+    }
+
+    private static String texte(String valeur) {
+        return valeur == null || valeur.isBlank() || "null".equals(valeur.trim()) ? null : valeur.trim();
+    }
+}
@@ -0,0 +1,77 @@
+package ma.Vala.Boutique.service;
+
+import jakarta.persistence.criteria.Predicate;
+import lombok.RequiredArgsConstructor;
+import ma.Vala.Boutique.entities.Reservation;
+import ma.Vala.Boutique.entities.Reservation.StatutReservation;
+import ma.Vala.Boutique.repository.ReservationRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recherche multi-critères des réservations (admin).
+ * La requête ne contient que les prédicats des filtres renseignés : chaque combinaison de filtres
+ * a son propre plan, qui peut utiliser l'index adapté, au lieu d'un plan unique en (:x IS NULL OR ...).
+ * L'email est cherché par préfixe (ou égalité pour une adresse complète) sans LOWER() :
+ * la collation de la colonne est insensible à la casse et le prédicat reste utilisable par un index.
+ */
+@Service
+@RequiredArgsConstructor
+public class RechercheReservationService {
+
+    private static final char ECHAPPEMENT = '\\';
+
+    public record Filtres(String email, StatutReservation statut, LocalDate dateDebut, LocalDate dateFin,
+                          Long produitId) {
+
+        public static Filtres aucun() {
+            return new Filtres(null, null, null, null, null);
+        }
+    }
+
+    private final ReservationRepository reservationRepository;
+
+    // Réservations les plus récentes d'abord
+    public Page<Reservation> rechercher(Filtres filtres, int page, int size) {
+        return reservationRepository.findAll(specification(filtres),
+                PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "dateCreation", "id")));
+    }
+
+    static Specification<Reservation> specification(Filtres filtres) {
+        return (root, query, cb) -> {
+            List<Predicate> predicats = new ArrayList<>(5);
+
+            String email = filtres.email() != null ? filtres.email().trim() : "";
+            if (!email.isEmpty()) {
+                predicats.add(email.indexOf('@') > 0 && email.indexOf('@') < email.length() - 1
+                        ? cb.equal(root.get("email"), email)
+                        : cb.like(root.get("email"), echapper(email) + "%", ECHAPPEMENT));
+            }
+            if (filtres.statut() != null) {
+                predicats.add(cb.equal(root.get("statut"), filtres.statut()));
+            }
+            if (filtres.produitId() != null) {
+                predicats.add(cb.equal(root.get("produit").get("id"), filtres.produitId()));
+            }
+            if (filtres.dateDebut() != null) {
+                predicats.add(cb.greaterThanOrEqualTo(root.get("dateDepart"), filtres.dateDebut()));
+            }
+            if (filtres.dateFin() != null) {
+                predicats.add(cb.lessThanOrEqualTo(root.get("dateRetour"), filtres.dateFin()));
+            }
+            return cb.and(predicats.toArray(new Predicate[0]));
+        };
+    }
+
+    // Les jokers saisis par l'utilisateur sont cherchés tels quels
+    private static String echapper(String valeur) {
+        return valeur.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
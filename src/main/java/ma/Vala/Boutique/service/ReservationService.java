@@ -0,0 +1,219 @@
+package ma.Vala.Boutique.service;
+
+import lombok.RequiredArgsConstructor;
+import ma.Vala.Boutique.entities.Reservation;
+import ma.Vala.Boutique.entities.Reservation.StatutReservation;
+import ma.Vala.Boutique.events.ReservationModifieeEvent;
+import ma.Vala.Boutique.repository.ReservationRepository;
+import ma.Vala.Boutique.service.StatistiquesReservationService.Mouvement;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Écritures sur les réservations qui engagent l'inventaire : création, changement de statut, suppression.
+ * Chaque opération prend ou rend les jours du registre d'inventaire dans la même transaction
+ * que l'écriture de la réservation, met à jour les statistiques agrégées,
+ * puis publie un {@link ReservationModifieeEvent}.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReservationService {
+
+    public static final int TAILLE_MAX_LOT = 1000;
+
+    public enum Issue { MODIFIEE, INCHANGEE, INTROUVABLE, TRANSITION_INVALIDE }
+
+    public record ResultatStatut(Long id, Issue issue, StatutReservation ancienStatut, StatutReservation statut) {}
+
+    private final ReservationRepository reservationRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final InventaireService inventaireService;
+    private final StatistiquesReservationService statistiquesService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * @throws VehiculeIndisponibleException si un jour de la période est complet
+     */
+    @Transactional
+    public Reservation creer(Reservation reservation) {
+        if (reservation.getStatut().isActive()) {
+            prendre(reservation);
+        }
+        Reservation saved = reservationRepository.save(reservation);
+        statistiquesService.appliquer(Mouvement.of(saved, null, saved.getStatut()));
+        eventPublisher.publishEvent(ReservationModifieeEvent.sauvegarde(saved));
+        return saved;
+    }
+
+    /**
+     * Passe la réservation au nouveau statut et enregistre ses autres champs modifiés.
+     * Réactiver une réservation reprend un véhicule et peut donc échouer.
+     *
+     * @throws VehiculeIndisponibleException si la réservation est réactivée sur une période complète
+     * @throws IllegalStateException         si le statut a été modifié entre-temps par une autre requête
+     */
+    @Transactional
+    public Reservation changerStatut(Reservation reservation, StatutReservation nouveau) {
+        StatutReservation ancien = reservation.getStatut();
+        if (ancien != nouveau) {
+            // Compare-and-set : un seul des changements concurrents passe, l'inventaire n'est ajusté qu'une fois
+            if (reservationRepository.updateStatut(reservation.getId(), ancien, nouveau) == 0) {
+                throw new IllegalStateException("La réservation " + reservation.getId() + " a été modifiée entre-temps");
+            }
+            if (!ancien.isActive() && nouveau.isActive()) {
+                prendre(reservation);
+            } else if (ancien.isActive() && !nouveau.isActive()) {
+                rendre(reservation);
+            }
+            statistiquesService.appliquer(Mouvement.of(reservation, ancien, nouveau));
+        }
+        reservation.setStatut(nouveau);
+        Reservation saved = reservationRepository.save(reservation);
+        eventPublisher.publishEvent(ReservationModifieeEvent.sauvegarde(saved));
+        return saved;
+    }
+
+    /**
+     * Change le statut de plusieurs réservations en une transaction.
+     * Les lignes sont verrouillées et lues en une requête, les transitions validées en mémoire
+     * ({@link StatutReservation#peutPasserA}), puis toutes les réservations valides passent au nouveau
+     * statut par un seul UPDATE. Aucune transition autorisée ne réactive une réservation :
+     * l'inventaire n'est que rendu, en un lot, pour celles qui deviennent inactives.
+     *
+     * @return le résultat de chaque id, dans l'ordre de la demande (doublons retirés)
+     */
+    @Transactional
+    public List<ResultatStatut> changerStatutEnMasse(List<Long> ids, StatutReservation nouveau) {
+        List<Long> demandes = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (demandes.size() > TAILLE_MAX_LOT) {
+            throw new IllegalArgumentException("Au plus " + TAILLE_MAX_LOT + " réservations par demande");
+        }
+        if (demandes.isEmpty()) {
+            return List.of();
+        }
+
+        // [statut, produitId, dateDepart, dateRetour, prixTotal, nombreJours, email] par id
+        Map<Long, Object[]> etats = new HashMap<>();
+        jdbcTemplate.query("SELECT id, statut, produit_id, date_depart, date_retour, prix_total, nombre_jours, email " +
+                        "FROM reservations WHERE id IN ("
+                        + String.join(", ", Collections.nCopies(demandes.size(), "?")) + ") FOR UPDATE",
+                rs -> {
+                    etats.put(rs.getLong(1), new Object[]{StatutReservation.valueOf(rs.getString(2)),
+                            rs.getLong(3), rs.getObject(4, LocalDate.class), rs.getObject(5, LocalDate.class),
+                            rs.getDouble(6), rs.getInt(7), rs.getString(8)});
+                },
+                demandes.toArray());
+
+        List<ResultatStatut> resultats = new ArrayList<>(demandes.size());
+        List<Long> aModifier = new ArrayList<>();
+        List<Object[]> aLiberer = new ArrayList<>();
+        List<Mouvement> mouvements = new ArrayList<>();
+        for (Long id : demandes) {
+            Object[] etat = etats.get(id);
+            if (etat == null) {
+                resultats.add(new ResultatStatut(id, Issue.INTROUVABLE, null, null));
+                continue;
+            }
+            StatutReservation ancien = (StatutReservation) etat[0];
+            if (ancien == nouveau) {
+                resultats.add(new ResultatStatut(id, Issue.INCHANGEE, ancien, ancien));
+            } else if (!ancien.peutPasserA(nouveau)) {
+                resultats.add(new ResultatStatut(id, Issue.TRANSITION_INVALIDE, ancien, ancien));
+            } else {
+                resultats.add(new ResultatStatut(id, Issue.MODIFIEE, ancien, nouveau));
+                aModifier.add(id);
+                mouvements.add(new Mouvement((Long) etat[1], (LocalDate) etat[2], (Double) etat[4], (Integer) etat[5],
+                        ancien, nouveau));
+                if (ancien.isActive() && !nouveau.isActive()) {
+                    aLiberer.add(new Object[]{etat[1], etat[2], etat[3]});
+                }
+            }
+        }
+        if (aModifier.isEmpty()) {
+            return resultats;
+        }
+
+        reservationRepository.updateStatutEnMasse(aModifier, nouveau, LocalDateTime.now());
+        if (!aLiberer.isEmpty()) {
+            inventaireService.libererLot(aLiberer);
+        }
+        statistiquesService.appliquer(mouvements);
+        for (Long id : aModifier) {
+            Object[] etat = etats.get(id);
+            eventPublisher.publishEvent(new ReservationModifieeEvent(id, (Long) etat[1],
+                    (LocalDate) etat[2], (LocalDate) etat[3], (String) etat[6], nouveau));
+        }
+        return resultats;
+    }
+
+    /**
+     * Enregistre la commande PayPal créée pour la réservation.
+     *
+     * @return false si la réservation n'est plus en attente ou si sa capture est en cours
+     */
+    @Transactional
+    public boolean enregistrerPaiementInitie(Long id, String transactionId, String methode) {
+        return reservationRepository.updatePaiementInitie(id, transactionId, methode, LocalDateTime.now()) == 1;
+    }
+
+    // Paiement abandonné chez PayPal : le blocage en cours continue jusqu'à son échéance
+    @Transactional
+    public boolean annulerPaiement(Long id) {
+        return reservationRepository.updatePaymentStatus(id, List.of("PENDING"), "CANCELLED") == 1;
+    }
+
+    /**
+     * Réserve la réservation pour la capture de son paiement (CAPTURING) : l'expiration des blocages
+     * ne l'annule plus tant que la capture n'est pas terminée ou abandonnée.
+     * Une capture déjà réservée peut être reprise : une seule exécution par commande est garantie
+     * par CaptureIdempotenteService, la précédente s'est donc arrêtée avant d'aboutir.
+     *
+     * @return false si la réservation n'est plus en attente de paiement (blocage expiré, annulée)
+     */
+    @Transactional
+    public boolean reserverCapture(Long id) {
+        return reservationRepository.updatePaymentStatus(id, List.of("PENDING", "CAPTURING"), "CAPTURING") == 1;
+    }
+
+    // Capture non aboutie : le paiement repart pour un nouveau délai (l'appelant réarme le blocage)
+    @Transactional
+    public boolean abandonnerCapture(Long id) {
+        return reservationRepository.updateCaptureAbandonnee(id, LocalDateTime.now()) == 1;
+    }
+
+    // Retourne false si la réservation avait déjà été supprimée ou modifiée
+    @Transactional
+    public boolean supprimer(Reservation reservation) {
+        if (reservationRepository.deleteByIdAndStatut(reservation.getId(), reservation.getStatut()) == 0) {
+            return false;
+        }
+        if (reservation.getStatut().isActive()) {
+            rendre(reservation);
+        }
+        statistiquesService.appliquer(Mouvement.of(reservation, reservation.getStatut(), null));
+        eventPublisher.publishEvent(ReservationModifieeEvent.suppression(reservation));
+        return true;
+    }
+
+    // La quantité du véhicule est lue en base par le registre (pas dans un cache propre à l'instance)
+    private void prendre(Reservation reservation) {
+        inventaireService.reserver(reservation.getProduit().getId(),
+                reservation.getDateDepart(), reservation.getDateRetour());
+    }
+
+    private void rendre(Reservation reservation) {
+        inventaireService.liberer(reservation.getProduit().getId(),
+                reservation.getDateDepart(), reservation.getDateRetour());
+    }
+}
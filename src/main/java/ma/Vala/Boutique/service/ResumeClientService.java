@@ -0,0 +1,118 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.entities.Reservation.StatutReservation;
+import ma.Vala.Boutique.events.ReservationModifieeEvent;
+import ma.Vala.Boutique.repository.ReservationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Résumé des réservations d'un client (nombre par statut, total dépensé), calculé par un seul
+ * GROUP BY sur l'index (email, date_creation, id) et gardé en cache.
+ * Borné en taille (éviction LRU) et en durée de vie (TTL, pour les écritures faites par une autre instance),
+ * invalidé après chaque {@link ReservationModifieeEvent} du client.
+ */
+@Service
+public class ResumeClientService {
+
+    /**
+     * @param totalDepense somme des prix des réservations confirmées, en cours ou terminées
+     */
+    public record ResumeClient(String email, long nombreReservations, Map<StatutReservation, Long> parStatut,
+                               double totalDepense) {
+    }
+
+    private record Entree(ResumeClient resume, long expireA) {
+    }
+
+    private final ReservationRepository reservationRepository;
+    private final int tailleMax;
+    private final long ttlNanos;
+
+    // LinkedHashMap en ordre d'accès : le résumé le moins récemment lu est évincé en premier
+    private final LinkedHashMap<String, Entree> entrees;
+
+    // Incrémenté à chaque invalidation, pour ne pas remettre en cache une lecture devenue obsolète
+    private final AtomicLong generation = new AtomicLong();
+
+    public ResumeClientService(ReservationRepository reservationRepository,
+                               @Value("${app.clients.resume.cache.taille-max:1000}") int tailleMax,
+                               @Value("${app.clients.resume.cache.ttl-secondes:300}") long ttlSecondes) {
+        this.reservationRepository = reservationRepository;
+        this.tailleMax = tailleMax;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSecondes);
+        this.entrees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entree> eldest) {
+                return size() > ResumeClientService.this.tailleMax;
+            }
+        };
+    }
+
+    public ResumeClient resume(String email) {
+        String cle = normaliser(email);
+        synchronized (entrees) {
+            Entree entree = entrees.get(cle);
+            if (entree != null) {
+                if (entree.expireA() - System.nanoTime() > 0) {
+                    return entree.resume();
+                }
+                entrees.remove(cle);
+            }
+        }
+
+        long generationLecture = generation.get();
+        ResumeClient resume = calculer(cle);
+        synchronized (entrees) {
+            if (generation.get() == generationLecture) {
+                entrees.put(cle, new Entree(resume, System.nanoTime() + ttlNanos));
+            }
+        }
+        return resume;
+    }
+
+    // Après le commit : le résumé recalculé verra l'écriture
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onReservationModifiee(ReservationModifieeEvent event) {
+        synchronized (entrees) {
+            generation.incrementAndGet();
+            if (event.email() != null) {
+                entrees.remove(normaliser(event.email()));
+            } else {
+                entrees.clear();
+            }
+        }
+    }
+
+    private ResumeClient calculer(String email) {
+        Map<StatutReservation, Long> parStatut = new EnumMap<>(StatutReservation.class);
+        for (StatutReservation statut : StatutReservation.values()) {
+            parStatut.put(statut, 0L);
+        }
+        long nombre = 0;
+        double totalDepense = 0;
+        for (Object[] ligne : reservationRepository.getResumeClient(email)) {
+            StatutReservation statut = (StatutReservation) ligne[0];
+            long compte = ((Number) ligne[1]).longValue();
+            parStatut.put(statut, compte);
+            nombre += compte;
+            if (ligne[2] != null && (statut == StatutReservation.CONFIRMEE
+                    || statut == StatutReservation.EN_COURS || statut == StatutReservation.TERMINEE)) {
+                totalDepense += ((Number) ligne[2]).doubleValue();
+            }
+        }
+        return new ResumeClient(email, nombre, parStatut, Math.round(totalDepense * 100) / 100.0);
+    }
+
+    // Les emails sont enregistrés en minuscules à la création de la réservation
+    static String normaliser(String email) {
+        return email.trim().toLowerCase();
+    }
+}
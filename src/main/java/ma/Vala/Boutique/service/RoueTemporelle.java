@@ -0,0 +1,141 @@
+package ma.Vala.Boutique.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Roue temporelle hiérarchique : trois niveaux de 64 cases (64 tics, 64² tics, 64³ tics).
+ * Ajouter, annuler et faire avancer la roue d'un tic coûtent O(1) (hors échéances traitées),
+ * quel que soit le nombre d'échéances en attente. Une échéance lointaine descend d'un niveau
+ * à chaque tour du niveau inférieur, jusqu'à la case du tic où elle expire.
+ * Les méthodes sont synchronisées : la roue est partagée entre les requêtes et la tâche qui la fait avancer.
+ *
+ * @param <K> clé de l'échéance (une seule échéance par clé : ajouter remplace la précédente)
+ */
+public class RoueTemporelle<K> {
+
+    private static final int BITS = 6;
+    private static final int CASES = 1 << BITS;
+    private static final int MASQUE = CASES - 1;
+    private static final int NIVEAUX = 3;
+
+    private static final class Echeance<K> {
+        final K cle;
+        final long tic;
+        Set<Echeance<K>> caseCourante;
+
+        Echeance(K cle, long tic) {
+            this.cle = cle;
+            this.tic = tic;
+        }
+    }
+
+    private final long dureeTicMs;
+    private final List<List<Set<Echeance<K>>>> niveaux = new ArrayList<>();
+    // Échéances au-delà du dernier niveau, réinsérées à chaque tour de celui-ci
+    private final Set<Echeance<K>> debordement = new HashSet<>();
+    // Échéances déjà passées au moment de l'ajout, rendues au prochain avancer()
+    private final Set<Echeance<K>> echues = new HashSet<>();
+    private final Map<K, Echeance<K>> parCle = new HashMap<>();
+
+    private long ticCourant;
+
+    public RoueTemporelle(long dureeTicMs, long maintenantMs) {
+        this.dureeTicMs = dureeTicMs;
+        this.ticCourant = maintenantMs / dureeTicMs;
+        for (int n = 0; n < NIVEAUX; n++) {
+            List<Set<Echeance<K>>> cases = new ArrayList<>(CASES);
+            for (int c = 0; c < CASES; c++) {
+                cases.add(new HashSet<>());
+            }
+            niveaux.add(cases);
+        }
+    }
+
+    public synchronized void ajouter(K cle, long echeanceMs) {
+        annuler(cle);
+        Echeance<K> echeance = new Echeance<>(cle, echeanceMs / dureeTicMs);
+        parCle.put(cle, echeance);
+        placer(echeance);
+    }
+
+    public synchronized boolean annuler(K cle) {
+        Echeance<K> echeance = parCle.remove(cle);
+        if (echeance == null) {
+            return false;
+        }
+        echeance.caseCourante.remove(echeance);
+        return true;
+    }
+
+    public synchronized boolean contient(K cle) {
+        return parCle.containsKey(cle);
+    }
+
+    public synchronized int taille() {
+        return parCle.size();
+    }
+
+    /**
+     * Fait avancer la roue jusqu'à maintenant et retourne les clés arrivées à échéance.
+     */
+    public synchronized List<K> avancer(long maintenantMs) {
+        List<K> expirees = new ArrayList<>();
+        vider(echues, expirees);
+
+        long cible = maintenantMs / dureeTicMs;
+        while (ticCourant < cible) {
+            ticCourant++;
+            // Les niveaux supérieurs descendent d'abord dans les niveaux inférieurs
+            for (int n = NIVEAUX - 1; n >= 1; n--) {
+                if ((ticCourant & ((1L << (BITS * n)) - 1)) == 0) {
+                    if (n == NIVEAUX - 1) {
+                        redistribuer(debordement);
+                    }
+                    redistribuer(niveaux.get(n).get((int) ((ticCourant >> (BITS * n)) & MASQUE)));
+                }
+            }
+            vider(niveaux.get(0).get((int) (ticCourant & MASQUE)), expirees);
+            // Redescendue pile sur le tic courant
+            vider(echues, expirees);
+        }
+        return expirees;
+    }
+
+    private void placer(Echeance<K> echeance) {
+        Set<Echeance<K>> destination = echues;
+        if (echeance.tic > ticCourant) {
+            destination = debordement;
+            for (int n = 0; n < NIVEAUX; n++) {
+                // Même bloc au niveau n+1 : la case du niveau n sera atteinte avant de reboucler
+                if ((echeance.tic >> (BITS * (n + 1))) == (ticCourant >> (BITS * (n + 1)))) {
+                    destination = niveaux.get(n).get((int) ((echeance.tic >> (BITS * n)) & MASQUE));
+                    break;
+                }
+            }
+        }
+        echeance.caseCourante = destination;
+        destination.add(echeance);
+    }
+
+    private void redistribuer(Set<Echeance<K>> cases) {
+        if (cases.isEmpty()) {
+            return;
+        }
+        List<Echeance<K>> aReplacer = new ArrayList<>(cases);
+        cases.clear();
+        aReplacer.forEach(this::placer);
+    }
+
+    private void vider(Set<Echeance<K>> cases, List<K> expirees) {
+        for (Echeance<K> echeance : cases) {
+            parCle.remove(echeance.cle);
+            expirees.add(echeance.cle);
+        }
+        cases.clear();
+    }
+}
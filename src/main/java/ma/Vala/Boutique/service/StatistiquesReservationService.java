@@ -0,0 +1,175 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.entities.Reservation;
+import ma.Vala.Boutique.entities.Reservation.StatutReservation;
+import ma.Vala.Boutique.repository.StatistiqueReservationRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistiques des réservations servies depuis l'agrégat stats_reservation_jour
+ * (jour de départ × produit × statut : nombre, revenu, jours loués).
+ * Chaque écriture de réservation y applique son delta dans sa propre transaction
+ * (INSERT ... ON DUPLICATE KEY UPDATE), si bien que le tableau de bord ne dépend plus
+ * de la taille de l'historique. reconstruire() recalcule l'agrégat depuis les réservations.
+ * Toutes les écritures de réservations passent par ReservationService ou CycleReservationService,
+ * qui appliquent ces deltas.
+ */
+@Service
+public class StatistiquesReservationService implements SmartInitializingSingleton {
+
+    private static final String TACHE_INITIALISATION = "statistiques-reservations-init";
+
+    private static final String APPLIQUER =
+            "INSERT INTO stats_reservation_jour (jour, produit_id, statut, nombre, revenu, jours_loues) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE nombre = nombre + VALUES(nombre), " +
+            "revenu = revenu + VALUES(revenu), jours_loues = jours_loues + VALUES(jours_loues)";
+
+    private static final String RECALCULER =
+            "INSERT INTO stats_reservation_jour (jour, produit_id, statut, nombre, revenu, jours_loues) " +
+            "SELECT date_depart, produit_id, statut, COUNT(*), COALESCE(SUM(prix_total), 0), " +
+            "COALESCE(SUM(nombre_jours), 0) FROM reservations " +
+            "WHERE date_depart IS NOT NULL AND produit_id IS NOT NULL AND statut IS NOT NULL " +
+            "GROUP BY date_depart, produit_id, statut";
+
+    /**
+     * Passage d'une réservation d'un statut à un autre ; ancien est null pour une création,
+     * nouveau est null pour une suppression.
+     */
+    public record Mouvement(Long produitId, LocalDate jour, double revenu, int jours,
+                            StatutReservation ancien, StatutReservation nouveau) {
+
+        public static Mouvement of(Reservation reservation, StatutReservation ancien, StatutReservation nouveau) {
+            return new Mouvement(reservation.getProduit().getId(), reservation.getDateDepart(),
+                    reservation.getPrixTotal() != null ? reservation.getPrixTotal() : 0,
+                    reservation.getNombreJours() != null ? reservation.getNombreJours() : 0,
+                    ancien, nouveau);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StatistiqueReservationRepository statistiqueRepository;
+    private final VerrouTacheService verrouTacheService;
+    private final TransactionTemplate transactionTemplate;
+
+    public StatistiquesReservationService(JdbcTemplate jdbcTemplate,
+                                          StatistiqueReservationRepository statistiqueRepository,
+                                          VerrouTacheService verrouTacheService,
+                                          PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.statistiqueRepository = statistiqueRepository;
+        this.verrouTacheService = verrouTacheService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Avant le démarrage du serveur web : aucun delta ne peut remplir l'agrégat avant l'initialisation
+    @Override
+    public void afterSingletonsInstantiated() {
+        initialiser();
+    }
+
+    /**
+     * Premier démarrage : l'agrégat est vide alors que des réservations existent déjà.
+     * Une seule des instances qui démarrent ensemble le reconstruit (bail dans verrou_tache).
+     */
+    public void initialiser() {
+        if (statistiqueRepository.count() != 0
+                || !verrouTacheService.acquerir(TACHE_INITIALISATION, Duration.ofMinutes(10))) {
+            return;
+        }
+        // Une autre instance a pu le reconstruire juste avant d'obtenir le bail
+        if (statistiqueRepository.count() == 0) {
+            // Appel interne : la transaction de reconstruire() est ouverte ici
+            Integer lignes = transactionTemplate.execute(status -> reconstruire());
+            System.out.println("Statistiques des réservations initialisées : " + lignes + " lignes");
+        }
+    }
+
+    /**
+     * Recalcule tout l'agrégat depuis la table des réservations (rattrapage, ou après une écriture
+     * faite hors de l'application). Les écritures concurrentes attendent la fin du recalcul.
+     *
+     * @return le nombre de lignes de l'agrégat
+     */
+    @Transactional
+    public int reconstruire() {
+        jdbcTemplate.update("DELETE FROM stats_reservation_jour");
+        return jdbcTemplate.update(RECALCULER);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void appliquer(Mouvement mouvement) {
+        appliquer(List.of(mouvement));
+    }
+
+    // Applique les deltas de plusieurs réservations en un seul lot
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void appliquer(List<Mouvement> mouvements) {
+        List<Object[]> deltas = new ArrayList<>(mouvements.size() * 2);
+        for (Mouvement m : mouvements) {
+            if (m.jour() == null || m.produitId() == null || m.ancien() == m.nouveau()) {
+                continue;
+            }
+            if (m.ancien() != null) {
+                deltas.add(new Object[]{m.jour(), m.produitId(), m.ancien().name(), -1, -m.revenu(), -m.jours()});
+            }
+            if (m.nouveau() != null) {
+                deltas.add(new Object[]{m.jour(), m.produitId(), m.nouveau().name(), 1, m.revenu(), m.jours()});
+            }
+        }
+        if (!deltas.isEmpty()) {
+            jdbcTemplate.batchUpdate(APPLIQUER, deltas);
+        }
+    }
+
+    // ==========================
+    // 🔹 Lectures
+    // ==========================
+
+    // Nombre de réservations par mois de départ, les plus récents d'abord
+    public List<Map<String, Object>> getStatsParMois() {
+        List<Map<String, Object>> mois = new ArrayList<>();
+        for (Object[] ligne : statistiqueRepository.getStatsParMois()) {
+            Map<String, Object> entree = new HashMap<>();
+            entree.put("annee", ligne[0]);
+            entree.put("mois", ligne[1]);
+            entree.put("nombre", ligne[2]);
+            mois.add(entree);
+        }
+        return mois;
+    }
+
+    public Map<StatutReservation, Long> countParStatut() {
+        Map<StatutReservation, Long> comptes = new EnumMap<>(StatutReservation.class);
+        for (StatutReservation statut : StatutReservation.values()) {
+            comptes.put(statut, 0L);
+        }
+        for (Object[] ligne : statistiqueRepository.countParStatut()) {
+            comptes.put((StatutReservation) ligne[0], ((Number) ligne[1]).longValue());
+        }
+        return comptes;
+    }
+
+    public double calculerRevenu(LocalDate dateDebut, LocalDate dateFin) {
+        Double revenu = statistiqueRepository.calculerRevenu(dateDebut, dateFin);
+        return revenu != null ? revenu : 0;
+    }
+
+    public long calculerJoursLoues(LocalDate dateDebut, LocalDate dateFin) {
+        Long jours = statistiqueRepository.calculerJoursLoues(dateDebut, dateFin);
+        return jours != null ? jours : 0;
+    }
+}
@@ -0,0 +1,309 @@
+package ma.Vala.Boutique.service;
+
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.entities.RegleTarif;
+import ma.Vala.Boutique.entities.RegleTarif.TypeRegle;
+import ma.Vala.Boutique.repository.RegleTarifRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Moteur de tarification : prix d'une location à partir du prix journalier du véhicule et des règles
+ * actives (saison, week-end, longue durée), par véhicule, par catégorie ou pour toute la flotte.
+ * Pour chaque type, seule la règle la plus précise s'applique (véhicule, puis catégorie, puis flotte).
+ * Les règles sont gardées en mémoire avec leur numéro de version, tenu en base (version_tarifs)
+ * et incrémenté à chaque modification, quelle que soit l'instance qui la fait ; avant de servir un devis,
+ * la version en base est relue (au plus toutes les app.tarifs.version.verification-ms) et les règles
+ * rechargées si elle a changé. Les devis sont mis en cache par (produit, période, version des règles),
+ * et une entrée n'est réutilisée que si le prix et la catégorie du produit n'ont pas changé.
+ */
+@Service
+public class TarificationService {
+
+    public static final int DUREE_MAX_JOURS = 365;
+
+    public record Ajustement(Long regleId, TypeRegle type, String libelle, double montant) {
+    }
+
+    public record Devis(Long produitId, String dateDepart, String dateRetour, int nombreJours,
+                        double prixJournalier, double prixBase, List<Ajustement> ajustements,
+                        double prixTotal, long versionRegles) {
+    }
+
+    private record Regles(long version, List<RegleTarif> actives) {
+    }
+
+    private record Cle(Long produitId, LocalDate dateDepart, LocalDate dateRetour, long versionRegles) {
+    }
+
+    private record Entree(Devis devis, double prix, String categorie) {
+    }
+
+    private static final String CREER_VERSION = "INSERT IGNORE INTO version_tarifs (id, version) VALUES (1, 0)";
+    private static final String LIRE_VERSION = "SELECT version FROM version_tarifs WHERE id = 1";
+    private static final String INCREMENTER_VERSION = "UPDATE version_tarifs SET version = version + 1 WHERE id = 1";
+
+    private final RegleTarifRepository regleTarifRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int tailleMax;
+    private final long verificationNs;
+
+    // Version -1 : aucune règle chargée, le premier devis relit la base
+    private volatile Regles regles = new Regles(-1, List.of());
+    private volatile long prochaineVerification = System.nanoTime();
+
+    // LinkedHashMap en ordre d'accès : le devis le moins récemment lu est évincé en premier
+    private final LinkedHashMap<Cle, Entree> devis;
+
+    public TarificationService(RegleTarifRepository regleTarifRepository,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${app.tarifs.cache.taille-max:1000}") int tailleMax,
+                               @Value("${app.tarifs.version.verification-ms:1000}") long verificationMs) {
+        this.regleTarifRepository = regleTarifRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tailleMax = tailleMax;
+        this.verificationNs = TimeUnit.MILLISECONDS.toNanos(verificationMs);
+        this.devis = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Cle, Entree> eldest) {
+                return size() > TarificationService.this.tailleMax;
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void recharger() {
+        // Version lue avant les règles : une modification faite entre les deux sera vue à la vérification suivante
+        long version = lireVersion();
+        List<RegleTarif> actives = new ArrayList<>(regleTarifRepository.findByActifTrue());
+        actives.sort(Comparator.comparing(RegleTarif::getId));
+        // Les devis des versions précédentes ne sont plus jamais lus et sortent du cache LRU
+        regles = new Regles(version, List.copyOf(actives));
+        System.out.println("Règles de tarification chargées : " + actives.size() + " (version " + version + ")");
+    }
+
+    public long getVersionRegles() {
+        return regles.version();
+    }
+
+    // ==========================
+    // 🔹 Devis
+    // ==========================
+
+    /**
+     * Prix de la location des jours [dateDepart, dateRetour[, comme le nombre de jours d'une réservation.
+     *
+     * @throws IllegalArgumentException si la période est vide ou dépasse DUREE_MAX_JOURS
+     */
+    public Devis devis(Produit produit, LocalDate dateDepart, LocalDate dateRetour) {
+        long nombreJours = ChronoUnit.DAYS.between(dateDepart, dateRetour);
+        if (nombreJours <= 0 || nombreJours > DUREE_MAX_JOURS) {
+            throw new IllegalArgumentException("La durée de location doit être comprise entre 1 et "
+                    + DUREE_MAX_JOURS + " jours");
+        }
+
+        Regles courantes = reglesAJour();
+        double prix = produit.getPrix() != null ? produit.getPrix() : 0;
+        Cle cle = new Cle(produit.getId(), dateDepart, dateRetour, courantes.version());
+
+        Entree entree;
+        synchronized (devis) {
+            entree = devis.get(cle);
+        }
+        if (entree != null && entree.prix() == prix && Objects.equals(entree.categorie(), produit.getCategorie())) {
+            return entree.devis();
+        }
+
+        Devis calcule = calculer(produit, prix, dateDepart, dateRetour, (int) nombreJours, courantes);
+        synchronized (devis) {
+            devis.put(cle, new Entree(calcule, prix, produit.getCategorie()));
+        }
+        return calcule;
+    }
+
+    // Règles rechargées si leur version en base a changé depuis la dernière vérification (autre instance)
+    private Regles reglesAJour() {
+        long maintenant = System.nanoTime();
+        if (maintenant - prochaineVerification >= 0) {
+            prochaineVerification = maintenant + verificationNs;
+            if (lireVersion() != regles.version()) {
+                recharger();
+            }
+        }
+        return regles;
+    }
+
+    private long lireVersion() {
+        List<Long> versions = jdbcTemplate.queryForList(LIRE_VERSION, Long.class);
+        if (versions.isEmpty()) {
+            jdbcTemplate.update(CREER_VERSION);
+            return 0;
+        }
+        return versions.get(0);
+    }
+
+    // Dans la transaction de la modification : les autres instances voient la règle et la version ensemble
+    private void incrementerVersion() {
+        if (jdbcTemplate.update(INCREMENTER_VERSION) == 0) {
+            jdbcTemplate.update(CREER_VERSION);
+            jdbcTemplate.update(INCREMENTER_VERSION);
+        }
+    }
+
+    private static Devis calculer(Produit produit, double prix, LocalDate dateDepart, LocalDate dateRetour,
+                                  int nombreJours, Regles regles) {
+        List<RegleTarif> applicables = regles.actives().stream()
+                .filter(regle -> precision(regle, produit) >= 0)
+                .toList();
+
+        // Montant cumulé de chaque règle appliquée, dans l'ordre de première application
+        Map<RegleTarif, Double> montants = new LinkedHashMap<>();
+        for (LocalDate jour = dateDepart; jour.isBefore(dateRetour); jour = jour.plusDays(1)) {
+            LocalDate j = jour;
+            RegleTarif saison = meilleure(applicables, produit, TypeRegle.SAISON,
+                    regle -> !j.isBefore(regle.getDateDebut()) && !j.isAfter(regle.getDateFin()));
+            if (saison != null) {
+                montants.merge(saison, prix * saison.getPourcentage() / 100, Double::sum);
+            }
+            if (jour.getDayOfWeek() == DayOfWeek.SATURDAY || jour.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                RegleTarif weekend = meilleure(applicables, produit, TypeRegle.WEEKEND, regle -> true);
+                if (weekend != null) {
+                    montants.merge(weekend, prix * weekend.getPourcentage() / 100, Double::sum);
+                }
+            }
+        }
+
+        double prixBase = prix * nombreJours;
+        double sousTotal = prixBase + montants.values().stream().mapToDouble(Double::doubleValue).sum();
+        RegleTarif longueDuree = meilleure(applicables, produit, TypeRegle.LONGUE_DUREE,
+                regle -> regle.getDureeMin() <= nombreJours);
+        if (longueDuree != null) {
+            montants.put(longueDuree, sousTotal * longueDuree.getPourcentage() / 100);
+        }
+
+        List<Ajustement> ajustements = new ArrayList<>(montants.size());
+        double total = prixBase;
+        for (Map.Entry<RegleTarif, Double> montant : montants.entrySet()) {
+            RegleTarif regle = montant.getKey();
+            double arrondi = arrondir(montant.getValue());
+            ajustements.add(new Ajustement(regle.getId(), regle.getType(), regle.getLibelle(), arrondi));
+            total += arrondi;
+        }
+
+        return new Devis(produit.getId(), dateDepart.toString(), dateRetour.toString(), nombreJours,
+                prix, arrondir(prixBase), ajustements, Math.max(0, arrondir(total)), regles.version());
+    }
+
+    /**
+     * Règle du type donné la plus précise parmi celles qui s'appliquent ;
+     * à précision égale, la plus longue durée minimale puis la plus ancienne.
+     */
+    private static RegleTarif meilleure(List<RegleTarif> applicables, Produit produit, TypeRegle type,
+                                        Predicate<RegleTarif> condition) {
+        RegleTarif meilleure = null;
+        int meilleurePrecision = -1;
+        for (RegleTarif regle : applicables) {
+            if (regle.getType() != type || !condition.test(regle)) {
+                continue;
+            }
+            int precision = precision(regle, produit);
+            if (precision > meilleurePrecision || (precision == meilleurePrecision
+                    && type == TypeRegle.LONGUE_DUREE && regle.getDureeMin() > meilleure.getDureeMin())) {
+                meilleure = regle;
+                meilleurePrecision = precision;
+            }
+        }
+        return meilleure;
+    }
+
+    // 2 : règle du véhicule, 1 : de sa catégorie, 0 : de toute la flotte, -1 : ne le concerne pas
+    private static int precision(RegleTarif regle, Produit produit) {
+        if (regle.getProduitId() != null) {
+            return regle.getProduitId().equals(produit.getId()) ? 2 : -1;
+        }
+        if (regle.getCategorie() != null && !regle.getCategorie().isBlank()) {
+            return regle.getCategorie().equalsIgnoreCase(produit.getCategorie()) ? 1 : -1;
+        }
+        return 0;
+    }
+
+    private static double arrondir(double montant) {
+        return Math.round(montant * 100) / 100.0;
+    }
+
+    // ==========================
+    // 🔹 Gestion des règles
+    // ==========================
+
+    public List<RegleTarif> listerRegles() {
+        return regleTarifRepository.findAll();
+    }
+
+    /**
+     * Crée ou met à jour une règle ; les devis déjà calculés ne sont plus servis.
+     *
+     * @throws IllegalArgumentException si la règle est incomplète pour son type
+     */
+    public RegleTarif enregistrer(RegleTarif regle) {
+        valider(regle);
+        RegleTarif saved = transactionTemplate.execute(status -> {
+            RegleTarif enregistree = regleTarifRepository.save(regle);
+            incrementerVersion();
+            return enregistree;
+        });
+        recharger();
+        return saved;
+    }
+
+    public boolean existe(Long id) {
+        return regleTarifRepository.existsById(id);
+    }
+
+    public boolean supprimer(Long id) {
+        if (!regleTarifRepository.existsById(id)) {
+            return false;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            regleTarifRepository.deleteById(id);
+            incrementerVersion();
+        });
+        recharger();
+        return true;
+    }
+
+    private static void valider(RegleTarif regle) {
+        if (regle.getType() == null) {
+            throw new IllegalArgumentException("Le type de la règle est obligatoire");
+        }
+        if (regle.getPourcentage() <= -100) {
+            throw new IllegalArgumentException("Une remise ne peut pas atteindre 100 %");
+        }
+        if (regle.getType() == TypeRegle.SAISON && (regle.getDateDebut() == null || regle.getDateFin() == null
+                || regle.getDateFin().isBefore(regle.getDateDebut()))) {
+            throw new IllegalArgumentException("Une règle de saison exige une date de début et une date de fin");
+        }
+        if (regle.getType() == TypeRegle.LONGUE_DUREE && (regle.getDureeMin() == null || regle.getDureeMin() < 1)) {
+            throw new IllegalArgumentException("Une règle de longue durée exige une durée minimale");
+        }
+    }
+}
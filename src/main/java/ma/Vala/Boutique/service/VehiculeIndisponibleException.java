@@ -0,0 +1,12 @@
+package ma.Vala.Boutique.service;
+
+/**
+ * Levée quand plus aucun véhicule du produit n'est libre sur au moins un jour de la période.
+ * Exception non vérifiée : la transaction de réservation en cours est annulée.
+ */
+public class VehiculeIndisponibleException extends RuntimeException {
+
+    public VehiculeIndisponibleException(Long produitId) {
+        super("Aucun véhicule disponible pour cette période (produit " + produitId + ")");
+    }
+}
@@ -0,0 +1,57 @@
+package ma.Vala.Boutique.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Coordination des tâches planifiées entre plusieurs instances de l'application.
+ * Chaque tâche a une ligne dans verrou_tache ; une instance l'obtient par un UPDATE conditionnel
+ * (bail expiré ou déjà à elle) et la garde pour la durée demandée. Les dates sont celles
+ * de la base, pour ne pas dépendre de l'horloge de chaque instance.
+ */
+@Service
+public class VerrouTacheService {
+
+    private static final String CREER =
+            "INSERT IGNORE INTO verrou_tache (nom, verrouille_jusqua, proprietaire) VALUES (?, ?, NULL)";
+    private static final String ACQUERIR =
+            "UPDATE verrou_tache SET verrouille_jusqua = TIMESTAMPADD(SECOND, ?, CURRENT_TIMESTAMP), proprietaire = ? " +
+            "WHERE nom = ? AND (verrouille_jusqua <= CURRENT_TIMESTAMP OR proprietaire = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String instance;
+
+    public VerrouTacheService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.instance = nomHote() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * Tente d'obtenir la tâche pour la durée donnée.
+     * Le bail n'est pas rendu à la fin de l'exécution : une autre instance dont le déclenchement
+     * tombe dans le même intervalle ne rejoue donc pas la tâche.
+     *
+     * @return true si cette instance doit exécuter la tâche
+     */
+    public boolean acquerir(String nom, Duration duree) {
+        jdbcTemplate.update(CREER, nom, LocalDateTime.of(2000, 1, 1, 0, 0));
+        return jdbcTemplate.update(ACQUERIR, Math.max(1, duree.toSeconds()), instance, nom, instance) == 1;
+    }
+
+    public String getInstance() {
+        return instance;
+    }
+
+    private static String nomHote() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "instance";
+        }
+    }
+}
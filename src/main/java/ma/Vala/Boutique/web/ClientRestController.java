@@ -6,12 +6,14 @@ import ma.Vala.Boutique.entities.PaymentStatus;
 import ma.Vala.Boutique.entities.PaymentType;
 import ma.Vala.Boutique.repository.ClientRepository;
 import ma.Vala.Boutique.repository.PaymentRepository;
+import ma.Vala.Boutique.service.JsonExportService;
 import ma.Vala.Boutique.service.PaymentService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.net.URI;
@@ -28,11 +30,14 @@ public class ClientRestController {
     private final PaymentRepository paymentRepository;
     private final ClientRepository clientRepository;
     private final PaymentService paymentService;
+    private final JsonExportService jsonExportService;
 
-    public ClientRestController(PaymentRepository paymentRepository, ClientRepository clientRepository, PaymentService paymentService) {
+    public ClientRestController(PaymentRepository paymentRepository, ClientRepository clientRepository, PaymentService paymentService,
+                                JsonExportService jsonExportService) {
         this.paymentRepository = paymentRepository;
         this.clientRepository = clientRepository;
         this.paymentService = paymentService;
+        this.jsonExportService = jsonExportService;
     }
 
     // ✅ AMÉLIORATION: Retourner ResponseEntity avec gestion d'erreurs
@@ -55,6 +60,16 @@ public class ClientRestController {
         }
     }
 
+    // Export en flux de tous les paiements (?format=json pour un tableau, ?format=ndjson pour une ligne par paiement)
+    @GetMapping(value = "/payments", params = "format")
+    public ResponseEntity<StreamingResponseBody> exportPayments(@RequestParam String format) {
+        JsonExportService.Format formatExport = JsonExportService.Format.depuis(format);
+        return ResponseEntity.ok()
+                .contentType(formatExport.getMediaType())
+                .body(jsonExportService.exporter(formatExport,
+                        paymentRepository::findByIdGreaterThanOrderByIdAsc, Payment::getId));
+    }
+
     @GetMapping("/payments/byType")
     public ResponseEntity<Map<String, Object>> paymentsByType(@RequestParam PaymentType type) {
         try {
@@ -127,6 +142,16 @@ public class ClientRestController {
         }
     }
 
+    // Export en flux de tous les clients, même principe que /payments?format=
+    @GetMapping(value = "/clients", params = "format")
+    public ResponseEntity<StreamingResponseBody> exportClients(@RequestParam String format) {
+        JsonExportService.Format formatExport = JsonExportService.Format.depuis(format);
+        return ResponseEntity.ok()
+                .contentType(formatExport.getMediaType())
+                .body(jsonExportService.exporter(formatExport,
+                        clientRepository::findByIdGreaterThanOrderByIdAsc, Client::getId));
+    }
+
     @GetMapping("/clients/{id}")
     public ResponseEntity<Client> findClientById(@PathVariable Long id) {
         try {
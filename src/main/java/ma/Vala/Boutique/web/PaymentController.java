@@ -1,15 +1,24 @@
 package ma.Vala.Boutique.web;
 
 import jakarta.validation.Valid;
+import ma.Vala.Boutique.dtos.ReservationResponse;
 import ma.Vala.Boutique.entities.Reservation;
 import ma.Vala.Boutique.entities.Produit;
 import ma.Vala.Boutique.repository.ReservationRepository;
 import ma.Vala.Boutique.repository.ProduitRepository;
+import ma.Vala.Boutique.service.BlocagePaiementService;
+import ma.Vala.Boutique.service.CaptureIdempotenteService;
+import ma.Vala.Boutique.service.CaptureIdempotenteService.CaptureEnCoursException;
+import ma.Vala.Boutique.service.CaptureIdempotenteService.CleReutiliseeException;
+import ma.Vala.Boutique.service.CaptureIdempotenteService.Resultat;
 import ma.Vala.Boutique.service.PayPalService;
+import ma.Vala.Boutique.service.PoolConnexionsPayPal;
+import ma.Vala.Boutique.service.ReservationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
@@ -31,6 +40,18 @@ public class PaymentController {
     @Autowired
     private PayPalService payPalService;
 
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private BlocagePaiementService blocagePaiementService;
+
+    @Autowired
+    private PoolConnexionsPayPal poolConnexionsPayPal;
+
+    @Autowired
+    private CaptureIdempotenteService captureIdempotenteService;
+
     @Value("${app.frontend.base-url}")
     private String frontendBaseUrl;
 
@@ -82,16 +103,21 @@ public class PaymentController {
                     description
             );
 
-            // Sauvegarder l'ID PayPal dans la réservation
-            reservation.setTransactionId((String) paypalResponse.get("id"));
-            reservation.setPaymentMethod("PAYPAL");
-            reservation.setPaymentStatus("PENDING");
-            reservationRepository.save(reservation);
+            // Sauvegarder l'ID PayPal dans la réservation, si elle n'a pas expiré pendant l'appel
+            if (!reservationService.enregistrerPaiementInitie(reservation.getId(),
+                    (String) paypalResponse.get("id"), "PAYPAL")) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(createErrorResponse("Cette réservation ne peut pas être payée"));
+            }
+
+            // Le véhicule reste bloqué le temps du paiement, puis la réservation expire
+            blocagePaiementService.bloquer(reservation.getId());
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("paypalOrderId", paypalResponse.get("id"));
             response.put("approvalUrl", paypalResponse.get("approvalUrl"));
+            response.put("expiresAt", LocalDateTime.now().plus(blocagePaiementService.getDuree()).toString());
             response.put("message", "Paiement PayPal créé avec succès");
 
             return ResponseEntity.ok(response);
@@ -104,44 +130,35 @@ public class PaymentController {
         }
     }
 
-    // Capturer le paiement PayPal après approbation
+    // Capturer le paiement PayPal après approbation (une seule fois par commande, voir CaptureIdempotenteService)
     @PostMapping("/capture-paypal/{orderId}")
-    public ResponseEntity<?> capturePayPalPayment(@PathVariable String orderId) {
+    public ResponseEntity<?> capturePayPalPayment(@PathVariable String orderId,
+                                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         try {
             System.out.println("=== DEBUG CAPTURE PAIEMENT PAYPAL ===");
             System.out.println("Order ID: " + orderId);
 
-            // Trouver la réservation avec cet orderId
-            Optional<Reservation> reservationOpt = reservationRepository.findByTransactionId(orderId);
-            if (!reservationOpt.isPresent()) {
+            if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > 255)) {
                 return ResponseEntity.badRequest()
-                        .body(createErrorResponse("Réservation non trouvée pour cette transaction"));
+                        .body(createErrorResponse("En-tête Idempotency-Key invalide"));
             }
 
-            Reservation reservation = reservationOpt.get();
-
-            // Capturer le paiement chez PayPal
-            Map<String, Object> captureResponse = payPalService.capturePayment(orderId);
-
-            if ("COMPLETED".equals(captureResponse.get("status"))) {
-                // Mettre à jour la réservation
-                reservation.setStatut(Reservation.StatutReservation.CONFIRMEE);
-                reservation.setPaymentStatus("COMPLETED");
-                reservation.setDateModification(LocalDateTime.now());
-
-                Reservation updatedReservation = reservationRepository.save(reservation);
-
-                Map<String, Object> response = new HashMap<>();
-                response.put("success", true);
-                response.put("message", "Paiement PayPal confirmé avec succès");
-                response.put("reservation", createReservationResponse(updatedReservation));
+            Resultat resultat = captureIdempotenteService.executer(orderId, idempotencyKey,
+                    () -> capturer(orderId));
 
-                return ResponseEntity.ok(response);
-            } else {
-                return ResponseEntity.badRequest()
-                        .body(createErrorResponse("Le paiement PayPal n'a pas été complété"));
+            ResponseEntity.BodyBuilder reponse = ResponseEntity.status(resultat.statut());
+            if (resultat.rejoue()) {
+                reponse.header("Idempotent-Replayed", "true");
             }
-
+            return reponse.body(resultat.corps());
+
+        } catch (CleReutiliseeException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(createErrorResponse("Cette clé d'idempotence a déjà été utilisée pour une autre commande"));
+        } catch (CaptureEnCoursException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header("Retry-After", "2")
+                    .body(createErrorResponse("La capture de ce paiement est déjà en cours"));
         } catch (Exception e) {
             System.err.println("Erreur lors de la capture du paiement PayPal: " + e.getMessage());
             e.printStackTrace();
@@ -150,6 +167,81 @@ public class PaymentController {
         }
     }
 
+    // Exécution effective de la capture ; seul un paiement confirmé est un résultat définitif
+    private Resultat capturer(String orderId) {
+        // Trouver la réservation avec cet orderId
+        Optional<Reservation> reservationOpt = reservationRepository.findByTransactionId(orderId);
+        if (!reservationOpt.isPresent()) {
+            return Resultat.provisoire(HttpStatus.BAD_REQUEST.value(),
+                    new HashMap<>(createErrorResponse("Réservation non trouvée pour cette transaction")));
+        }
+
+        Reservation reservation = reservationOpt.get();
+
+        // Réservée en base avant d'appeler PayPal : l'expiration du blocage, sur n'importe quelle instance,
+        // ne peut plus l'annuler pendant la capture. Échec : blocage expiré, la réservation a été annulée.
+        if (!reservationService.reserverCapture(reservation.getId())) {
+            return Resultat.provisoire(HttpStatus.CONFLICT.value(),
+                    new HashMap<>(createErrorResponse("Le délai de paiement de cette réservation a expiré")));
+        }
+        blocagePaiementService.lever(reservation.getId());
+
+        // Capturer le paiement chez PayPal
+        Map<String, Object> captureResponse;
+        try {
+            captureResponse = payPalService.capturePayment(orderId);
+        } catch (RuntimeException e) {
+            // Délai dépassé, erreur PayPal : la capture a pu aboutir quand même
+            captureResponse = etatApresEchec(orderId, reservation.getId(), e);
+        }
+
+        if ("COMPLETED".equals(captureResponse.get("status"))) {
+            // Mettre à jour la réservation
+            reservation.setPaymentStatus("COMPLETED");
+            reservation.setDateModification(LocalDateTime.now());
+
+            Reservation updatedReservation = reservationService.changerStatut(
+                    reservation, Reservation.StatutReservation.CONFIRMEE);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Paiement PayPal confirmé avec succès");
+            response.put("reservation", ReservationResponse.from(updatedReservation));
+
+            return Resultat.definitif(HttpStatus.OK.value(), response);
+        } else {
+            // Paiement non abouti : le client peut réessayer pendant un nouveau délai
+            reprendreBlocage(reservation.getId());
+            return Resultat.provisoire(HttpStatus.BAD_REQUEST.value(),
+                    new HashMap<>(createErrorResponse("Le paiement PayPal n'a pas été complété")));
+        }
+    }
+
+    /**
+     * État de la commande après un échec de capture : confirmée si PayPal l'a capturée malgré l'erreur.
+     * Sinon, le paiement repart pour un nouveau délai ; si PayPal ne répond pas non plus, la réservation
+     * reste en capture (jamais annulée par l'expiration) jusqu'au nouvel essai du client.
+     */
+    private Map<String, Object> etatApresEchec(String orderId, Long reservationId, RuntimeException erreur) {
+        Map<String, Object> commande;
+        try {
+            commande = payPalService.getPaymentDetails(orderId);
+        } catch (RuntimeException e) {
+            throw erreur;
+        }
+        if ("COMPLETED".equals(commande.get("status"))) {
+            return commande;
+        }
+        reprendreBlocage(reservationId);
+        throw erreur;
+    }
+
+    private void reprendreBlocage(Long reservationId) {
+        if (reservationService.abandonnerCapture(reservationId)) {
+            blocagePaiementService.bloquer(reservationId);
+        }
+    }
+
     // Vérifier le statut d'un paiement PayPal
     @GetMapping("/status-paypal/{orderId}")
     public ResponseEntity<?> checkPayPalPaymentStatus(@PathVariable String orderId) {
@@ -162,18 +254,34 @@ public class PaymentController {
         }
     }
 
+    // Statistiques du token OAuth PayPal (cache, renouvellements, appels regroupés)
+    @GetMapping("/paypal/token/stats")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPayPalTokenStats() {
+        return ResponseEntity.ok(payPalService.getStatistiquesToken());
+    }
+
+    // Occupation du pool de connexions HTTP vers PayPal (saturation, pics, attentes expirées)
+    @GetMapping("/paypal/http/stats")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPayPalHttpStats() {
+        return ResponseEntity.ok(poolConnexionsPayPal.getStatistiques());
+    }
+
+    // Captures dédoublonnées (exécutées, rejouées depuis la mémoire ou la base, attentes, conflits)
+    @GetMapping("/paypal/captures/stats")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> getPayPalCaptureStats() {
+        return ResponseEntity.ok(captureIdempotenteService.getStatistiques());
+    }
+
     // Gérer l'annulation PayPal
     @PostMapping("/cancel-paypal")
     public ResponseEntity<?> cancelPayPalPayment(@RequestBody Map<String, Object> request) {
         try {
             Long reservationId = Long.valueOf(request.get("reservationId").toString());
 
-            Optional<Reservation> reservationOpt = reservationRepository.findById(reservationId);
-            if (reservationOpt.isPresent()) {
-                Reservation reservation = reservationOpt.get();
-                reservation.setPaymentStatus("CANCELLED");
-                reservationRepository.save(reservation);
-            }
+            reservationService.annulerPaiement(reservationId);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -188,35 +296,6 @@ public class PaymentController {
     }
 
     // Méthodes utilitaires
-    private Map<String, Object> createReservationResponse(Reservation reservation) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("id", reservation.getId());
-        response.put("dateDepart", reservation.getDateDepart().toString());
-        response.put("dateRetour", reservation.getDateRetour().toString());
-        response.put("nom", reservation.getNom());
-        response.put("prenom", reservation.getPrenom());
-        response.put("telephone", reservation.getTelephone());
-        response.put("email", reservation.getEmail());
-        response.put("lieuPrise", reservation.getLieuPrise());
-        response.put("lieuRetour", reservation.getLieuRetour());
-        response.put("prixTotal", reservation.getPrixTotal());
-        response.put("nombreJours", reservation.getNombreJours());
-        response.put("statut", reservation.getStatut().name());
-        response.put("statutLabel", reservation.getStatut().getLabel());
-        response.put("dateCreation", reservation.getDateCreation().toString());
-
-        // Informations du produit
-        Map<String, Object> produitInfo = new HashMap<>();
-        produitInfo.put("id", reservation.getProduit().getId());
-        produitInfo.put("nom", reservation.getProduit().getNom());
-        produitInfo.put("marque", reservation.getProduit().getMarque());
-        produitInfo.put("categorie", reservation.getProduit().getCategorie());
-        produitInfo.put("imageUrl", reservation.getProduit().getImageUrl());
-        response.put("produit", produitInfo);
-
-        return response;
-    }
-
     private Map<String, String> createErrorResponse(String message) {
         Map<String, String> error = new HashMap<>();
         error.put("error", message);
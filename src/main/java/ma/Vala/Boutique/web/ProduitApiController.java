@@ -2,19 +2,41 @@ package ma.Vala.Boutique.web;
 
 import jakarta.validation.Valid;
 import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.events.ProduitModifieEvent;
 import ma.Vala.Boutique.repository.ProduitRepository;
 import ma.Vala.Boutique.cloudinary.CloudinaryService;
+import ma.Vala.Boutique.service.CalendrierService;
+import ma.Vala.Boutique.service.CatalogueFacetService;
+import ma.Vala.Boutique.service.CatalogueFacetService.Facette;
+import ma.Vala.Boutique.service.CatalogueSearchService;
+import ma.Vala.Boutique.service.CatalogueVersionService;
+import ma.Vala.Boutique.service.DisponibiliteService;
+import ma.Vala.Boutique.service.ProduitCacheService;
+import ma.Vala.Boutique.service.ProduitImageService;
+import ma.Vala.Boutique.service.ProduitImportService;
+import ma.Vala.Boutique.service.TarificationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -29,6 +51,36 @@ public class ProduitApiController {
     @Autowired
     private ProduitRepository produitRepository;
 
+    @Autowired
+    private CatalogueSearchService catalogueSearchService;
+
+    @Autowired
+    private ProduitCacheService produitCacheService;
+
+    @Autowired
+    private CatalogueFacetService catalogueFacetService;
+
+    @Autowired
+    private CatalogueVersionService catalogueVersionService;
+
+    @Autowired
+    private ProduitImportService produitImportService;
+
+    @Autowired
+    private ProduitImageService produitImageService;
+
+    @Autowired
+    private DisponibiliteService disponibiliteService;
+
+    @Autowired
+    private CalendrierService calendrierService;
+
+    @Autowired
+    private TarificationService tarificationService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     // Test de connexion Cloudinary
     @GetMapping("/cloudinary-test")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
@@ -109,13 +161,7 @@ public class ProduitApiController {
                 return ResponseEntity.badRequest().body("La quantité ne peut pas être négative");
             }
 
-            // Upload vers Cloudinary en utilisant le service
-            Map<String, Object> uploadResult = cloudinaryService.uploadFile(imageFile, "products");
-
-            String imageUrl = uploadResult.get("secure_url").toString();
-            String publicId = uploadResult.get("public_id").toString();
-
-            // Construire l'objet Produit
+            // Construire l'objet Produit (l'image sera envoyée à Cloudinary en arrière-plan)
             Produit produit = Produit.builder()
                     .nom(nom.trim())
                     .prix(prixValue)
@@ -125,22 +171,24 @@ public class ProduitApiController {
                     .quantite(quantiteValue)
                     .categorie(categorie.trim())
                     .marque(marque.trim())
-                    .imageUrl(imageUrl)
-                    .imagePublicId(publicId)
+                    .imageStatut(Produit.StatutImage.PENDING)
                     .build();
 
             System.out.println("Produit construit: " + produit);
 
             Produit saved = produitRepository.save(produit);
+            eventPublisher.publishEvent(ProduitModifieEvent.sauvegarde(saved));
             System.out.println("Produit sauvegardé avec ID: " + saved.getId());
 
+            produitImageService.planifierUpload(saved.getId(), imageFile, null);
+
             return ResponseEntity.status(HttpStatus.CREATED).body(saved);
 
         } catch (IOException e) {
-            System.err.println("Erreur Cloudinary: " + e.getMessage());
+            System.err.println("Erreur lors de la réception de l'image: " + e.getMessage());
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Erreur Cloudinary lors de l'upload : " + e.getMessage());
+                    .body("Erreur lors de la réception de l'image : " + e.getMessage());
         } catch (Exception e) {
             System.err.println("Erreur générale: " + e.getMessage());
             e.printStackTrace();
@@ -149,6 +197,34 @@ public class ProduitApiController {
         }
     }
 
+    // Import en masse : manifeste CSV/NDJSON (une ligne par véhicule) + archive zip des images
+    @PostMapping(value = "/produits/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<?> importerProduits(
+            @RequestParam("manifeste") MultipartFile manifeste,
+            @RequestParam(value = "images", required = false) MultipartFile images
+    ) {
+        try {
+            ProduitImportService.ResultatImport resultat = produitImportService.importer(manifeste, images);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", resultat.erreurs() == 0);
+            response.put("total", resultat.total());
+            response.put("importes", resultat.importes());
+            response.put("erreurs", resultat.erreurs());
+            response.put("resultats", resultat.resultats());
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Erreur lors de l'import: " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Erreur lors de l'import : " + e.getMessage());
+        }
+    }
+
     // Modifier un produit avec nouvelle image
     @PutMapping("/produits-with-image/{id}")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
@@ -190,26 +266,13 @@ public class ProduitApiController {
                 return ResponseEntity.badRequest().body("Format de nombre invalide: " + e.getMessage());
             }
 
-            // Si nouvelle image fournie
-            if (imageFile != null && !imageFile.isEmpty()) {
+            // Si nouvelle image fournie : l'ancienne reste affichée jusqu'à ce que la nouvelle soit prête
+            boolean nouvelleImage = imageFile != null && !imageFile.isEmpty();
+            if (nouvelleImage) {
                 // Validation de l'image
                 if (imageFile.getSize() > 10 * 1024 * 1024) {
                     return ResponseEntity.badRequest().body("L'image ne doit pas dépasser 10MB");
                 }
-
-                // Supprimer l'ancienne image
-                if (existingProduct.getImagePublicId() != null) {
-                    try {
-                        cloudinaryService.deleteFile(existingProduct.getImagePublicId());
-                    } catch (Exception e) {
-                        System.err.println("Erreur lors de la suppression de l'ancienne image: " + e.getMessage());
-                    }
-                }
-
-                // Upload nouvelle image
-                Map<String, Object> uploadResult = cloudinaryService.uploadFile(imageFile, "products");
-                existingProduct.setImageUrl(uploadResult.get("secure_url").toString());
-                existingProduct.setImagePublicId(uploadResult.get("public_id").toString());
             }
 
             // Mettre à jour les autres champs
@@ -222,13 +285,21 @@ public class ProduitApiController {
             existingProduct.setCategorie(categorie.trim());
             existingProduct.setMarque(marque.trim());
 
-            Produit updatedProduct = produitRepository.save(existingProduct);
+            // Les colonnes d'image ne sont pas écrites par save() (voir Produit)
+            Produit updatedProduct = produitImageService.avecImageActuelle(produitRepository.save(existingProduct));
+
+            if (nouvelleImage) {
+                // PENDING, puis upload et suppression de l'ancienne image en arrière-plan
+                produitImageService.planifierUpload(id, imageFile, updatedProduct.getImagePublicId());
+                updatedProduct = produitImageService.avecImageActuelle(updatedProduct);
+            }
+            eventPublisher.publishEvent(ProduitModifieEvent.sauvegarde(updatedProduct));
             return ResponseEntity.ok(updatedProduct);
 
         } catch (IOException e) {
-            System.err.println("Erreur Cloudinary: " + e.getMessage());
+            System.err.println("Erreur lors de la réception de l'image: " + e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Erreur Cloudinary lors de l'upload : " + e.getMessage());
+                    .body("Erreur lors de la réception de l'image : " + e.getMessage());
         } catch (Exception e) {
             System.err.println("Erreur lors de la modification: " + e.getMessage());
             e.printStackTrace();
@@ -242,15 +313,46 @@ public class ProduitApiController {
     public ResponseEntity<Map<String, Object>> getAllProduits(
             @RequestParam(value = "page", defaultValue = "0") int page,
             @RequestParam(value = "size", defaultValue = "10") int size,
-            @RequestParam(value = "keyword", defaultValue = "") String keyword) {
+            @RequestParam(value = "keyword", defaultValue = "") String keyword,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "count", defaultValue = "true") boolean count,
+            WebRequest webRequest) {
+
+        if (catalogueVersionService.checkNotModified(webRequest)) {
+            return null;
+        }
 
         try {
+            // Mode curseur (?after=<id>) ou sans COUNT (?count=false) : ni OFFSET profond ni total
+            if (keyword.isEmpty() && (after != null || !count)) {
+                Slice<Produit> produitSlice;
+                if (after != null) {
+                    long dernierId = after.isBlank() ? 0L : Long.parseLong(after.trim());
+                    produitSlice = produitRepository.findByIdGreaterThanOrderByIdAsc(dernierId, PageRequest.of(0, size));
+                } else {
+                    produitSlice = produitRepository.findSliceBy(PageRequest.of(page, size, Sort.by("id")));
+                }
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("produits", produitSlice.getContent());
+                response.put("hasNext", produitSlice.hasNext());
+                response.put("pageSize", size);
+                if (after == null) {
+                    response.put("currentPage", page);
+                }
+                if (produitSlice.hasNext()) {
+                    List<Produit> contenu = produitSlice.getContent();
+                    response.put("nextCursor", String.valueOf(contenu.get(contenu.size() - 1).getId()));
+                }
+                return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(response);
+            }
+
             Page<Produit> produitPage;
 
             if (keyword.isEmpty()) {
                 produitPage = produitRepository.findAll(PageRequest.of(page, size));
             } else {
-                produitPage = produitRepository.findByNomContainsIgnoreCase(keyword, PageRequest.of(page, size));
+                produitPage = catalogueSearchService.rechercher(keyword, PageRequest.of(page, size));
             }
 
             Map<String, Object> response = new HashMap<>();
@@ -260,7 +362,11 @@ public class ProduitApiController {
             response.put("currentPage", page);
             response.put("pageSize", size);
 
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(response);
+        } catch (NumberFormatException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Curseur invalide: " + after);
+            return ResponseEntity.badRequest().body(errorResponse);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Erreur lors de la récupération des produits: " + e.getMessage());
@@ -268,15 +374,184 @@ public class ProduitApiController {
         }
     }
 
+    // Catalogue filtré par facettes (plusieurs valeurs possibles par facette) avec les comptes par valeur
+    @GetMapping("/produits/facets")
+    public ResponseEntity<Map<String, Object>> getProduitsParFacettes(
+            @RequestParam(value = "categorie", required = false) List<String> categorie,
+            @RequestParam(value = "marque", required = false) List<String> marque,
+            @RequestParam(value = "annee", required = false) List<String> annee,
+            @RequestParam(value = "couleur", required = false) List<String> couleur,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "10") int size,
+            WebRequest webRequest) {
+
+        if (catalogueVersionService.checkNotModified(webRequest)) {
+            return null;
+        }
+
+        Map<Facette, List<String>> filtres = new EnumMap<>(Facette.class);
+        filtres.put(Facette.CATEGORIE, categorie);
+        filtres.put(Facette.MARQUE, marque);
+        filtres.put(Facette.ANNEE, annee);
+        filtres.put(Facette.COULEUR, couleur);
+
+        CatalogueFacetService.ResultatFacettes resultat = catalogueFacetService.rechercher(filtres, page, size);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("produits", resultat.produits());
+        response.put("facettes", resultat.facettes());
+        response.put("totalItems", resultat.totalItems());
+        response.put("totalPages", size > 0 ? (resultat.totalItems() + size - 1) / size : 0);
+        response.put("currentPage", page);
+        response.put("pageSize", size);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(response);
+    }
+
+    // Véhicules libres sur une période, pour toute la flotte en une requête
+    @GetMapping("/produits/disponibles")
+    public ResponseEntity<Map<String, Object>> getProduitsDisponibles(
+            @RequestParam String dateDepart,
+            @RequestParam String dateRetour,
+            @RequestParam(value = "categorie", required = false) List<String> categorie,
+            @RequestParam(value = "marque", required = false) List<String> marque,
+            @RequestParam(value = "prixMin", required = false) Double prixMin,
+            @RequestParam(value = "prixMax", required = false) Double prixMax) {
+
+        Map<String, Object> response = new HashMap<>();
+        LocalDate debut;
+        LocalDate fin;
+        try {
+            debut = LocalDate.parse(dateDepart);
+            fin = LocalDate.parse(dateRetour);
+        } catch (DateTimeParseException e) {
+            response.put("error", "Format de date invalide (attendu : AAAA-MM-JJ)");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (!debut.isBefore(fin)) {
+            response.put("error", "La date de départ doit être antérieure à la date de retour");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        List<Produit> candidats = candidatsDisponibilite(categorie, marque).stream()
+                .filter(p -> prixMin == null || (p.getPrix() != null && p.getPrix() >= prixMin))
+                .filter(p -> prixMax == null || (p.getPrix() != null && p.getPrix() <= prixMax))
+                .toList();
+
+        List<DisponibiliteService.ProduitDisponible> disponibles = disponibiliteService.disponibles(candidats, debut, fin);
+
+        response.put("dateDepart", debut.toString());
+        response.put("dateRetour", fin.toString());
+        response.put("produits", disponibles);
+        response.put("totalItems", disponibles.size());
+        return ResponseEntity.ok(response);
+    }
+
+    // Bitmaps à facettes tant qu'elles sont construites, sinon lecture en base (démarrage de l'instance)
+    private List<Produit> candidatsDisponibilite(List<String> categorie, List<String> marque) {
+        if (catalogueFacetService.isPret()) {
+            Map<Facette, List<String>> filtres = new EnumMap<>(Facette.class);
+            filtres.put(Facette.CATEGORIE, categorie);
+            filtres.put(Facette.MARQUE, marque);
+            return catalogueFacetService.rechercher(filtres, 0, Integer.MAX_VALUE).produits();
+        }
+        return produitRepository.findAll(Sort.by("id")).stream()
+                .filter(p -> correspond(p.getCategorie(), categorie))
+                .filter(p -> correspond(p.getMarque(), marque))
+                .toList();
+    }
+
+    // Même comparaison que les facettes : sans casse ni espaces autour
+    private static boolean correspond(String valeur, List<String> demandees) {
+        if (demandees == null || demandees.isEmpty()) {
+            return true;
+        }
+        return valeur != null && demandees.stream()
+                .anyMatch(d -> d.trim().equalsIgnoreCase(valeur.trim()));
+    }
+
     @GetMapping("/produits/{id}")
-    public ResponseEntity<Produit> getProduit(@PathVariable Long id) {
-        Optional<Produit> produit = produitRepository.findById(id);
+    public ResponseEntity<Produit> getProduit(@PathVariable Long id, WebRequest webRequest) {
+        if (catalogueVersionService.checkNotModified(webRequest)) {
+            return null;
+        }
+        Optional<Produit> produit = produitCacheService.findById(id);
         if (produit.isPresent()) {
-            return ResponseEntity.ok(produit.get());
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(produit.get());
         }
         return ResponseEntity.notFound().build();
     }
 
+    // Unités libres jour par jour sur les mois à venir (calendrier de réservation)
+    @GetMapping("/produits/{id}/calendrier")
+    public ResponseEntity<?> getCalendrier(
+            @PathVariable Long id,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "months", defaultValue = "3") int months) {
+
+        Optional<Produit> produit = produitCacheService.findById(id);
+        if (produit.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        LocalDate debut;
+        try {
+            debut = from != null ? LocalDate.parse(from) : LocalDate.now();
+        } catch (DateTimeParseException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Format de date invalide (attendu : AAAA-MM-JJ)");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+        int mois = Math.max(1, Math.min(months, CalendrierService.MOIS_MAX));
+        return ResponseEntity.ok(calendrierService.calendrier(produit.get(), debut, mois));
+    }
+
+    // Devis d'une location sur [from, to[ selon les règles de tarification
+    @GetMapping("/produits/{id}/devis")
+    public ResponseEntity<?> getDevis(
+            @PathVariable Long id,
+            @RequestParam("from") String from,
+            @RequestParam("to") String to) {
+
+        Optional<Produit> produit = produitCacheService.findById(id);
+        if (produit.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(tarificationService.devis(produit.get(), LocalDate.parse(from), LocalDate.parse(to)));
+        } catch (DateTimeParseException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Format de date invalide (attendu : AAAA-MM-JJ)");
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    // État de l'image d'un produit (PENDING / READY / FAILED), à interroger après création ou modification
+    @GetMapping("/produits/{id}/image")
+    public ResponseEntity<Map<String, Object>> getImageStatut(@PathVariable Long id) {
+        return produitRepository.findById(id)
+                .map(produit -> ResponseEntity.ok(ProduitImageService.etat(produit)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Notification SSE unique quand l'image est prête ou en échec
+    @GetMapping(value = "/produits/{id}/image/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> suivreImage(@PathVariable Long id) {
+        if (!produitRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(produitImageService.abonner(id));
+    }
+
+    // Compteurs du cache produits (hits, misses, évictions...)
+    @GetMapping("/produits/cache/stats")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(produitCacheService.getStatistiques());
+    }
+
     @DeleteMapping("/produits/{id}")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     public ResponseEntity<Map<String, String>> deleteProduit(@PathVariable Long id) {
@@ -292,16 +567,11 @@ public class ProduitApiController {
 
             Produit product = productOpt.get();
 
-            // Supprimer l'image de Cloudinary si elle existe
-            if (product.getImagePublicId() != null) {
-                try {
-                    cloudinaryService.deleteFile(product.getImagePublicId());
-                } catch (Exception e) {
-                    System.err.println("Erreur lors de la suppression de l'image Cloudinary: " + e.getMessage());
-                }
-            }
-
             produitRepository.deleteById(id);
+            eventPublisher.publishEvent(ProduitModifieEvent.suppression(id));
+
+            // Supprimer l'image de Cloudinary en arrière-plan si elle existe
+            produitImageService.planifierSuppression(product.getImagePublicId());
 
             Map<String, String> response = new HashMap<>();
             response.put("success", "true");
@@ -361,8 +631,9 @@ public class ProduitApiController {
                 existingProduct.setMarque(produitData.getMarque().trim());
             }
 
-            // L'image reste inchangée
-            Produit updatedProduct = produitRepository.save(existingProduct);
+            // L'image reste inchangée : ses colonnes ne sont pas écrites par save() (voir Produit)
+            Produit updatedProduct = produitImageService.avecImageActuelle(produitRepository.save(existingProduct));
+            eventPublisher.publishEvent(ProduitModifieEvent.sauvegarde(updatedProduct));
             return ResponseEntity.ok(updatedProduct);
 
         } catch (Exception e) {
@@ -2,21 +2,31 @@ package ma.Vala.Boutique.web;
 
 import jakarta.validation.Valid;
 import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.events.ProduitModifieEvent;
 import ma.Vala.Boutique.repository.ProduitRepository;
+import ma.Vala.Boutique.service.CatalogueSearchService;
+import ma.Vala.Boutique.service.CatalogueVersionService;
+import ma.Vala.Boutique.service.JsonExportService;
+import ma.Vala.Boutique.service.ProduitImageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 
 @Controller
 public class ProduitController {
@@ -24,13 +34,30 @@ public class ProduitController {
     @Autowired
     private ProduitRepository produitRepository;
 
+    @Autowired
+    private CatalogueSearchService catalogueSearchService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private CatalogueVersionService catalogueVersionService;
+
+    @Autowired
+    private JsonExportService jsonExportService;
+
+    @Autowired
+    private ProduitImageService produitImageService;
+
     @GetMapping("/user/index")
     public String index(Model model,
                         @RequestParam(name = "page", defaultValue = "0") int page,
                         @RequestParam(name = "size", defaultValue = "4") int size,
                         @RequestParam(name = "keyword", defaultValue = "") String keyword) {
 
-        Page<Produit> produits = produitRepository.findByNomContainsIgnoreCase(keyword, PageRequest.of(page, size));
+        Page<Produit> produits = keyword.isBlank()
+                ? produitRepository.findAll(PageRequest.of(page, size))
+                : catalogueSearchService.rechercher(keyword, PageRequest.of(page, size));
 
         model.addAttribute("listProduits", produits.getContent());
         model.addAttribute("pages", new int[produits.getTotalPages()]);
@@ -47,6 +74,7 @@ public class ProduitController {
                          @RequestParam(name = "page") int page) {
 
         produitRepository.deleteById(id);
+        eventPublisher.publishEvent(ProduitModifieEvent.suppression(id));
         return "redirect:/user/index?page=" + page + "&keyword=" + keyword;
     }
 
@@ -57,8 +85,19 @@ public class ProduitController {
 
     @GetMapping("/Produits")
     @ResponseBody
-    public List<Produit> listProduits() {
-        return produitRepository.findAll();
+    public ResponseEntity<StreamingResponseBody> listProduits(
+            @RequestParam(name = "format", defaultValue = "json") String format,
+            WebRequest webRequest) {
+        if (catalogueVersionService.checkNotModified(webRequest)) {
+            return null;
+        }
+        // Écrit en flux par lots d'id : même tableau JSON qu'avant (ou NDJSON), sans tout charger en mémoire
+        JsonExportService.Format formatExport = JsonExportService.Format.depuis(format);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .contentType(formatExport.getMediaType())
+                .body(jsonExportService.exporter(formatExport,
+                        produitRepository::findByIdGreaterThanOrderByIdAsc, Produit::getId));
     }
 
     @GetMapping("/admin/formProduits")
@@ -80,8 +119,10 @@ public class ProduitController {
             return "formProduits";
         }
 
+        boolean modification = produit.getId() != null;
         try {
-            if (!imageFile.isEmpty()) {
+            // En modification, l'image passe par Cloudinary (voir plus bas) : l'ancienne y est supprimée
+            if (!imageFile.isEmpty() && !modification) {
                 // Spécifie un dossier pour stocker l'image (ex. dans /uploads)
                 String uploadDir = System.getProperty("user.dir") + "/src/main/resources/static/images";
                 Files.createDirectories(Paths.get(uploadDir));
@@ -98,7 +139,22 @@ public class ProduitController {
             return "formProduits";
         }
 
-        produitRepository.save(produit);
+        // Les colonnes d'image ne sont écrites qu'à l'insertion par save() (voir Produit)
+        Produit saved = produitImageService.avecImageActuelle(produitRepository.save(produit));
+        if (modification && !imageFile.isEmpty()) {
+            try {
+                // PENDING, puis upload et suppression de l'ancienne image en arrière-plan, comme l'API
+                produitImageService.planifierUpload(saved.getId(), imageFile, saved.getImagePublicId());
+                saved = produitImageService.avecImageActuelle(saved);
+            } catch (IOException e) {
+                e.printStackTrace();
+                // Produit enregistré quand même, image passée en FAILED par planifierUpload
+                eventPublisher.publishEvent(ProduitModifieEvent.sauvegarde(produitImageService.avecImageActuelle(saved)));
+                model.addAttribute("uploadError", "Erreur lors de l'upload de l'image");
+                return "formProduits";
+            }
+        }
+        eventPublisher.publishEvent(ProduitModifieEvent.sauvegarde(saved));
         return "redirect:/user/index?page=" + page + "&keyword=" + keyword;
     }
     @GetMapping("/admin/editProduit")
@@ -0,0 +1,66 @@
+package ma.Vala.Boutique.web;
+
+import ma.Vala.Boutique.entities.RegleTarif;
+import ma.Vala.Boutique.service.TarificationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/tarifs/regles")
+@CrossOrigin(origins = {"http://localhost:4200", "http://localhost:49902"})
+@PreAuthorize("hasRole('ROLE_ADMIN')")
+public class RegleTarifController {
+
+    @Autowired
+    private TarificationService tarificationService;
+
+    @GetMapping
+    public ResponseEntity<List<RegleTarif>> getRegles() {
+        return ResponseEntity.ok(tarificationService.listerRegles());
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createRegle(@RequestBody RegleTarif regle) {
+        regle.setId(null);
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(tarificationService.enregistrer(regle));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateRegle(@PathVariable Long id, @RequestBody RegleTarif regle) {
+        if (!tarificationService.existe(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        regle.setId(id);
+        try {
+            return ResponseEntity.ok(tarificationService.enregistrer(regle));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse(e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> deleteRegle(@PathVariable Long id) {
+        if (!tarificationService.supprimer(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private Map<String, String> createErrorResponse(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        error.put("success", "false");
+        return error;
+    }
+}
@@ -1,13 +1,22 @@
 package ma.Vala.Boutique.web;
 
 import jakarta.validation.Valid;
+import ma.Vala.Boutique.dtos.ReservationResponse;
 import ma.Vala.Boutique.entities.Produit;
 import ma.Vala.Boutique.entities.Reservation;
-import ma.Vala.Boutique.repository.ProduitRepository;
 import ma.Vala.Boutique.repository.ReservationRepository;
+import ma.Vala.Boutique.service.DisponibiliteService;
+import ma.Vala.Boutique.service.ProduitCacheService;
+import ma.Vala.Boutique.service.RechercheReservationService;
+import ma.Vala.Boutique.service.ResumeClientService;
+import ma.Vala.Boutique.service.ReservationService;
+import ma.Vala.Boutique.service.StatistiquesReservationService;
+import ma.Vala.Boutique.service.TarificationService;
+import ma.Vala.Boutique.service.VehiculeIndisponibleException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,6 +24,8 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 
@@ -23,11 +34,31 @@ import java.util.*;
 @CrossOrigin(origins = {"http://localhost:4200", "http://localhost:49902"})
 public class ReservationApiController {
 
+    private static final int TAILLE_MAX_HISTORIQUE = 100;
+
     @Autowired
     private ReservationRepository reservationRepository;
 
     @Autowired
-    private ProduitRepository produitRepository;
+    private ProduitCacheService produitCacheService;
+
+    @Autowired
+    private DisponibiliteService disponibiliteService;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private StatistiquesReservationService statistiquesService;
+
+    @Autowired
+    private RechercheReservationService rechercheReservationService;
+
+    @Autowired
+    private TarificationService tarificationService;
+
+    @Autowired
+    private ResumeClientService resumeClientService;
 
     // Créer une réservation
     @PostMapping("/reservations")
@@ -37,7 +68,7 @@ public class ReservationApiController {
             System.out.println("Données reçues: " + request);
 
             // Validation du produit
-            Optional<Produit> produitOpt = produitRepository.findById(request.getProduitId());
+            Optional<Produit> produitOpt = produitCacheService.findById(request.getProduitId());
             if (!produitOpt.isPresent()) {
                 return ResponseEntity.badRequest()
                         .body(createErrorResponse("Produit non trouvé"));
@@ -66,13 +97,17 @@ public class ReservationApiController {
                         .body(createErrorResponse("La durée de location doit être d'au moins 1 jour"));
             }
 
-            double prixTotal = nombreJours * produit.getPrix();
-
-            // Vérification de la disponibilité
-            Long reservationsConflictuelles = reservationRepository.countReservationsConflictuelles(
-                    request.getProduitId(), dateDepart, dateRetour);
+            // Prix selon les règles de tarification (devis mis en cache, le même que GET /produits/{id}/devis)
+            double prixTotal;
+            try {
+                prixTotal = tarificationService.devis(produit, dateDepart, dateRetour).prixTotal();
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                        .body(createErrorResponse(e.getMessage()));
+            }
 
-            if (reservationsConflictuelles >= produit.getQuantite()) {
+            // Pré-vérification rapide (calendrier en mémoire), le registre d'inventaire tranche à l'écriture
+            if (!disponibiliteService.estDisponible(produit, dateDepart, dateRetour)) {
                 return ResponseEntity.badRequest()
                         .body(createErrorResponse("Aucun véhicule disponible pour cette période"));
             }
@@ -93,16 +128,19 @@ public class ReservationApiController {
                     .statut(Reservation.StatutReservation.EN_ATTENTE)
                     .build();
 
-            Reservation savedReservation = reservationRepository.save(reservation);
+            Reservation savedReservation = reservationService.creer(reservation);
             System.out.println("Réservation créée avec l'ID: " + savedReservation.getId());
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "Réservation créée avec succès");
-            response.put("reservation", createReservationResponse(savedReservation));
+            response.put("reservation", ReservationResponse.from(savedReservation));
 
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
 
+        } catch (VehiculeIndisponibleException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse("Aucun véhicule disponible pour cette période"));
         } catch (Exception e) {
             System.err.println("Erreur lors de la création de la réservation: " + e.getMessage());
             e.printStackTrace();
@@ -117,24 +155,74 @@ public class ReservationApiController {
     public ResponseEntity<Map<String, Object>> getAllReservations(
             @RequestParam(value = "page", defaultValue = "0") int page,
             @RequestParam(value = "size", defaultValue = "10") int size,
-            @RequestParam(value = "email", required = false) String email) {
+            @RequestParam(value = "email", required = false) String email,
+            @RequestParam(value = "statut", required = false) String statut,
+            @RequestParam(value = "dateDebut", required = false) String dateDebut,
+            @RequestParam(value = "dateFin", required = false) String dateFin,
+            @RequestParam(value = "produitId", required = false) Long produitId,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "count", defaultValue = "true") boolean count) {
 
         try {
-            PageRequest pageRequest = PageRequest.of(page, size,
-                    Sort.by(Sort.Direction.DESC, "dateCreation"));
+            boolean filtreEmail = email != null && !email.trim().isEmpty();
+
+            // Mode curseur (?after=<dateCreation,id>) ou sans COUNT (?count=false)
+            if (after != null || !count) {
+                Slice<Reservation> reservationSlice;
+                if (after != null && !after.isBlank()) {
+                    int separateur = after.lastIndexOf(',');
+                    if (separateur < 0) {
+                        return ResponseEntity.badRequest()
+                                .body(new HashMap<>(createErrorResponse("Curseur invalide: " + after)));
+                    }
+                    LocalDateTime dateCreation = LocalDateTime.parse(after.substring(0, separateur).trim());
+                    Long dernierId = Long.parseLong(after.substring(separateur + 1).trim());
+                    PageRequest premierePage = PageRequest.of(0, size);
+                    reservationSlice = filtreEmail
+                            ? reservationRepository.findByEmailApresCurseur(email.trim(), dateCreation, dernierId, premierePage)
+                            : reservationRepository.findApresCurseur(dateCreation, dernierId, premierePage);
+                } else {
+                    PageRequest sliceRequest = PageRequest.of(after != null ? 0 : page, size,
+                            Sort.by(Sort.Direction.DESC, "dateCreation", "id"));
+                    reservationSlice = filtreEmail
+                            ? reservationRepository.findSliceByEmailContainingIgnoreCase(email.trim(), sliceRequest)
+                            : reservationRepository.findSliceBy(sliceRequest);
+                }
 
-            Page<Reservation> reservationPage;
+                Map<String, Object> response = new HashMap<>();
+                response.put("reservations", reservationSlice.getContent().stream()
+                        .map(ReservationResponse::from).toList());
+                response.put("hasNext", reservationSlice.hasNext());
+                response.put("pageSize", size);
+                if (after == null) {
+                    response.put("currentPage", page);
+                }
+                if (reservationSlice.hasNext()) {
+                    List<Reservation> contenu = reservationSlice.getContent();
+                    Reservation derniere = contenu.get(contenu.size() - 1);
+                    response.put("nextCursor", derniere.getDateCreation() + "," + derniere.getId());
+                }
+                return ResponseEntity.ok(response);
+            }
 
-            if (email != null && !email.trim().isEmpty()) {
-                reservationPage = reservationRepository.findByEmailContainingIgnoreCase(
-                        email.trim(), pageRequest);
-            } else {
-                reservationPage = reservationRepository.findAll(pageRequest);
+            // Recherche multi-critères : seuls les filtres renseignés entrent dans la requête
+            RechercheReservationService.Filtres filtres;
+            try {
+                filtres = new RechercheReservationService.Filtres(email,
+                        statut != null && !statut.isBlank() ? Reservation.StatutReservation.valueOf(statut) : null,
+                        dateDebut != null && !dateDebut.isBlank() ? LocalDate.parse(dateDebut) : null,
+                        dateFin != null && !dateFin.isBlank() ? LocalDate.parse(dateFin) : null,
+                        produitId);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                return ResponseEntity.badRequest()
+                        .body(new HashMap<>(createErrorResponse("Filtre de recherche invalide")));
             }
 
+            Page<Reservation> reservationPage = rechercheReservationService.rechercher(filtres, page, size);
+
             Map<String, Object> response = new HashMap<>();
             response.put("reservations", reservationPage.getContent().stream()
-                    .map(this::createReservationResponse).toList());
+                    .map(ReservationResponse::from).toList());
             response.put("totalItems", reservationPage.getTotalElements());
             response.put("totalPages", reservationPage.getTotalPages());
             response.put("currentPage", page);
@@ -142,6 +230,9 @@ public class ReservationApiController {
 
             return ResponseEntity.ok(response);
 
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return ResponseEntity.badRequest()
+                    .body(new HashMap<>(createErrorResponse("Curseur invalide: " + after)));
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Erreur lors de la récupération des réservations: " + e.getMessage());
@@ -159,7 +250,7 @@ public class ReservationApiController {
                 return ResponseEntity.notFound().build();
             }
 
-            return ResponseEntity.ok(createReservationResponse(reservationOpt.get()));
+            return ResponseEntity.ok(ReservationResponse.from(reservationOpt.get()));
 
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -173,13 +264,69 @@ public class ReservationApiController {
         try {
             var reservations = reservationRepository.findByEmailOrderByDateCreationDesc(email);
             return ResponseEntity.ok(reservations.stream()
-                    .map(this::createReservationResponse).toList());
+                    .map(ReservationResponse::from).toList());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(createErrorResponse("Erreur lors de la récupération des réservations du client"));
         }
     }
 
+    // Historique d'un client par pages, plus récentes d'abord (?after=<dateCreation,id> pour la page suivante)
+    @GetMapping("/reservations/client/{email}/historique")
+    public ResponseEntity<?> getClientHistorique(
+            @PathVariable String email,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "after", required = false) String after) {
+
+        try {
+            String emailClient = email.trim().toLowerCase();
+            PageRequest premierePage = PageRequest.of(0, Math.max(1, Math.min(size, TAILLE_MAX_HISTORIQUE)));
+
+            Slice<Reservation> historique;
+            if (after != null && !after.isBlank()) {
+                int separateur = after.lastIndexOf(',');
+                if (separateur < 0) {
+                    return ResponseEntity.badRequest().body(createErrorResponse("Curseur invalide: " + after));
+                }
+                LocalDateTime dateCreation = LocalDateTime.parse(after.substring(0, separateur).trim());
+                Long dernierId = Long.parseLong(after.substring(separateur + 1).trim());
+                historique = reservationRepository.findHistoriqueClientApresCurseur(
+                        emailClient, dateCreation, dernierId, premierePage);
+            } else {
+                historique = reservationRepository.findHistoriqueClient(emailClient, premierePage);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("reservations", historique.getContent().stream()
+                    .map(ReservationResponse::from).toList());
+            response.put("hasNext", historique.hasNext());
+            response.put("pageSize", premierePage.getPageSize());
+            if (historique.hasNext()) {
+                List<Reservation> contenu = historique.getContent();
+                Reservation derniere = contenu.get(contenu.size() - 1);
+                response.put("nextCursor", derniere.getDateCreation() + "," + derniere.getId());
+            }
+            return ResponseEntity.ok(response);
+
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return ResponseEntity.badRequest().body(createErrorResponse("Curseur invalide: " + after));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Erreur lors de la récupération de l'historique du client"));
+        }
+    }
+
+    // Résumé d'un client : nombre de réservations par statut et total dépensé (en cache)
+    @GetMapping("/reservations/client/{email}/resume")
+    public ResponseEntity<?> getClientResume(@PathVariable String email) {
+        try {
+            return ResponseEntity.ok(resumeClientService.resume(email));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Erreur lors du calcul du résumé du client"));
+        }
+    }
+
     // Modifier le statut d'une réservation (admin)
     @PutMapping("/reservations/{id}/statut")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
@@ -198,16 +345,21 @@ public class ReservationApiController {
 
             try {
                 Reservation.StatutReservation statut = Reservation.StatutReservation.valueOf(nouveauStatut);
-                reservation.setStatut(statut);
-                reservationRepository.save(reservation);
+                reservation = reservationService.changerStatut(reservation, statut);
 
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("message", "Statut mis à jour avec succès");
-                response.put("reservation", createReservationResponse(reservation));
+                response.put("reservation", ReservationResponse.from(reservation));
 
                 return ResponseEntity.ok(response);
 
+            } catch (VehiculeIndisponibleException e) {
+                return ResponseEntity.badRequest()
+                        .body(createErrorResponse("Aucun véhicule disponible pour cette période"));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(createErrorResponse(e.getMessage()));
             } catch (IllegalArgumentException e) {
                 return ResponseEntity.badRequest()
                         .body(createErrorResponse("Statut invalide: " + nouveauStatut));
@@ -219,6 +371,49 @@ public class ReservationApiController {
         }
     }
 
+    // Modifier le statut de plusieurs réservations en une fois (admin)
+    @PatchMapping("/reservations/statut")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<?> updateReservationsStatus(@RequestBody StatutEnMasseRequest request) {
+        if (request.getIds() == null || request.getStatut() == null) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse("Les champs ids et statut sont obligatoires"));
+        }
+
+        Reservation.StatutReservation statut;
+        try {
+            statut = Reservation.StatutReservation.valueOf(request.getStatut());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse("Statut invalide: " + request.getStatut()));
+        }
+
+        try {
+            List<ReservationService.ResultatStatut> resultats =
+                    reservationService.changerStatutEnMasse(request.getIds(), statut);
+
+            long modifiees = resultats.stream()
+                    .filter(r -> r.issue() == ReservationService.Issue.MODIFIEE)
+                    .count();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("statut", statut);
+            response.put("modifiees", modifiees);
+            response.put("resultats", resultats);
+
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse(e.getMessage()));
+        } catch (Exception e) {
+            System.err.println("Erreur lors de la mise à jour des statuts: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Erreur lors de la mise à jour des statuts"));
+        }
+    }
+
     // Modifier le statut (version publique)
     @PutMapping("/reservations/{id}/status")
     public ResponseEntity<?> updateReservationStatusPublic(
@@ -235,15 +430,20 @@ public class ReservationApiController {
 
             try {
                 Reservation.StatutReservation statut = Reservation.StatutReservation.valueOf(nouveauStatut);
-                reservation.setStatut(statut);
-                Reservation saved = reservationRepository.save(reservation);
+                Reservation saved = reservationService.changerStatut(reservation, statut);
 
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("message", "Statut mis à jour avec succès");
-                response.put("reservation", createReservationResponse(saved));
+                response.put("reservation", ReservationResponse.from(saved));
 
                 return ResponseEntity.ok(response);
+            } catch (VehiculeIndisponibleException e) {
+                return ResponseEntity.badRequest()
+                        .body(createErrorResponse("Aucun véhicule disponible pour cette période"));
+            } catch (IllegalStateException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(createErrorResponse(e.getMessage()));
             } catch (IllegalArgumentException e) {
                 return ResponseEntity.badRequest()
                         .body(createErrorResponse("Statut invalide: " + nouveauStatut));
@@ -263,7 +463,9 @@ public class ReservationApiController {
             if (!reservationOpt.isPresent()) {
                 return ResponseEntity.notFound().build();
             }
-            reservationRepository.deleteById(id);
+            if (!reservationService.supprimer(reservationOpt.get())) {
+                return ResponseEntity.notFound().build();
+            }
 
             Map<String, String> response = new HashMap<>();
             response.put("success", "true");
@@ -286,7 +488,7 @@ public class ReservationApiController {
             @RequestParam String dateRetour) {
 
         try {
-            Optional<Produit> produitOpt = produitRepository.findById(produitId);
+            Optional<Produit> produitOpt = produitCacheService.findById(produitId);
             if (!produitOpt.isPresent()) {
                 return ResponseEntity.badRequest()
                         .body(createErrorResponse("Produit non trouvé"));
@@ -296,11 +498,8 @@ public class ReservationApiController {
             LocalDate debut = LocalDate.parse(dateDepart);
             LocalDate fin = LocalDate.parse(dateRetour);
 
-            Long reservationsConflictuelles = reservationRepository.countReservationsConflictuelles(
-                    produitId, debut, fin);
-
-            boolean disponible = reservationsConflictuelles < produit.getQuantite();
-            int vehiculesDisponibles = produit.getQuantite() - reservationsConflictuelles.intValue();
+            int vehiculesDisponibles = disponibiliteService.unitesLibres(produit, debut, fin);
+            boolean disponible = vehiculesDisponibles > 0;
 
             Map<String, Object> response = new HashMap<>();
             response.put("disponible", disponible);
@@ -315,73 +514,67 @@ public class ReservationApiController {
         }
     }
 
-    // === Méthodes utilitaires ===
-    private Map<String, Object> createReservationResponse(Reservation reservation) {
-        Map<String, Object> response = new HashMap<>();
-        response.put("id", reservation.getId());
-        response.put("dateDepart", reservation.getDateDepart().toString());
-        response.put("dateRetour", reservation.getDateRetour().toString());
-        response.put("nom", reservation.getNom());
-        response.put("prenom", reservation.getPrenom());
-        response.put("telephone", reservation.getTelephone());
-        response.put("email", reservation.getEmail());
-        response.put("lieuPrise", reservation.getLieuPrise());
-        response.put("lieuRetour", reservation.getLieuRetour());
-        response.put("prixTotal", reservation.getPrixTotal());
-        response.put("nombreJours", reservation.getNombreJours());
-        response.put("statut", reservation.getStatut().name());
-        response.put("statutLabel", reservation.getStatut().getLabel());
-        response.put("dateCreation", reservation.getDateCreation().toString());
-
-        // Champs de paiement si présents
-        if (hasField(reservation, "transactionId")) {
-            response.put("transactionId", getFieldValue(reservation, "transactionId"));
-        }
-        if (hasField(reservation, "paymentMethod")) {
-            response.put("paymentMethod", getFieldValue(reservation, "paymentMethod"));
-        }
-        if (hasField(reservation, "paymentStatus")) {
-            response.put("paymentStatus", getFieldValue(reservation, "paymentStatus"));
-        }
+    // Statistiques du tableau de bord (lues dans l'agrégat, pas dans la table des réservations)
+    @GetMapping("/reservations/stats")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<?> getReservationStats(
+            @RequestParam(required = false) String dateDebut,
+            @RequestParam(required = false) String dateFin) {
 
-        // Produit
-        Map<String, Object> produitInfo = new HashMap<>();
-        produitInfo.put("id", reservation.getProduit().getId());
-        produitInfo.put("nom", reservation.getProduit().getNom());
-        produitInfo.put("marque", reservation.getProduit().getMarque());
-        produitInfo.put("categorie", reservation.getProduit().getCategorie());
-        produitInfo.put("imageUrl", reservation.getProduit().getImageUrl());
-        response.put("produit", produitInfo);
+        try {
+            // Par défaut, le revenu de l'année en cours
+            LocalDate debut = dateDebut != null ? LocalDate.parse(dateDebut) : LocalDate.now().withDayOfYear(1);
+            LocalDate fin = dateFin != null ? LocalDate.parse(dateFin) : debut.plusYears(1).minusDays(1);
 
-        return response;
-    }
+            Map<String, Object> response = new HashMap<>();
+            response.put("parMois", statistiquesService.getStatsParMois());
+            response.put("parStatut", statistiquesService.countParStatut());
+            response.put("dateDebut", debut.toString());
+            response.put("dateFin", fin.toString());
+            response.put("revenu", statistiquesService.calculerRevenu(debut, fin));
+            response.put("joursLoues", statistiquesService.calculerJoursLoues(debut, fin));
 
-    private Map<String, String> createErrorResponse(String message) {
-        Map<String, String> error = new HashMap<>();
-        error.put("error", message);
-        error.put("success", "false");
-        return error;
-    }
+            return ResponseEntity.ok(response);
 
-    private boolean hasField(Object obj, String fieldName) {
-        try {
-            obj.getClass().getDeclaredField(fieldName);
-            return true;
-        } catch (NoSuchFieldException e) {
-            return false;
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest()
+                    .body(createErrorResponse("Format de date invalide"));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Erreur lors du calcul des statistiques"));
         }
     }
 
-    private Object getFieldValue(Object obj, String fieldName) {
+    // Recalculer l'agrégat des statistiques depuis les réservations (rattrapage)
+    @PostMapping("/reservations/stats/reconstruire")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    public ResponseEntity<?> reconstruireStats() {
         try {
-            java.lang.reflect.Field field = obj.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.get(obj);
+            long t0 = System.currentTimeMillis();
+            int lignes = statistiquesService.reconstruire();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("lignes", lignes);
+            response.put("dureeMs", System.currentTimeMillis() - t0);
+
+            return ResponseEntity.ok(response);
+
         } catch (Exception e) {
-            return null;
+            System.err.println("Erreur lors de la reconstruction des statistiques: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(createErrorResponse("Erreur lors de la reconstruction des statistiques"));
         }
     }
 
+    // === Méthodes utilitaires ===
+    private Map<String, String> createErrorResponse(String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        error.put("success", "false");
+        return error;
+    }
+
     // === DTO ===
     public static class ReservationRequest {
         private Long produitId;
@@ -445,4 +638,15 @@ public class ReservationApiController {
                     '}';
         }
     }
+
+    public static class StatutEnMasseRequest {
+        private List<Long> ids;
+        private String statut;
+
+        public List<Long> getIds() { return ids; }
+        public void setIds(List<Long> ids) { this.ids = ids; }
+
+        public String getStatut() { return statut; }
+        public void setStatut(String statut) { this.statut = statut; }
+    }
 }
@@ -0,0 +1,152 @@
+package ma.Vala.Boutique.bench;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Banc d'essai de la requête de conflits de réservation sur 1M réservations synthétiques (MySQL/MariaDB).
+ * Compare l'ancienne forme (trois plages en OR, bornes incluses) et la forme unique
+ * depart < retour' AND retour > depart', sans puis avec l'index (produit_id, statut, date_depart, date_retour).
+ * Affiche le plan (EXPLAIN) et la latence p50/p95/p99 de chaque combinaison.
+ *
+ * Travaille sur une table à part (reservations_bench), supprimée à la fin.
+ * Lancement : après mvn test-compile, exécuter main() avec le classpath de test et
+ *   -Dbench.url=jdbc:mysql://localhost:3306/bench?rewriteBatchedStatements=true
+ *   -Dbench.user=root -Dbench.password=... [-Dbench.lignes=1000000]
+ */
+public class ReservationConflitBenchmark {
+
+    private static final int PRODUITS = 500;
+    private static final int REQUETES = 2000;
+    private static final LocalDate ORIGINE = LocalDate.of(2023, 1, 1);
+    private static final int HORIZON_JOURS = 3 * 365;
+    private static final String[] STATUTS = {"EN_ATTENTE", "CONFIRMEE", "EN_COURS", "TERMINEE", "ANNULEE"};
+
+    private static final String ANCIENNE =
+            "SELECT COUNT(*) FROM reservations_bench WHERE produit_id = ? " +
+            "AND statut IN ('EN_ATTENTE', 'CONFIRMEE', 'EN_COURS') " +
+            "AND ((date_depart <= ? AND date_retour >= ?) " +
+            "OR (date_depart <= ? AND date_retour >= ?) " +
+            "OR (date_depart >= ? AND date_retour <= ?))";
+
+    private static final String NOUVELLE =
+            "SELECT COUNT(*) FROM reservations_bench WHERE produit_id = ? " +
+            "AND statut IN ('EN_ATTENTE', 'CONFIRMEE', 'EN_COURS') " +
+            "AND date_depart < ? AND date_retour > ?";
+
+    public static void main(String[] args) throws SQLException {
+        String url = System.getProperty("bench.url", "jdbc:mysql://localhost:3306/bench?createDatabaseIfNotExist=true&rewriteBatchedStatements=true");
+        int lignes = Integer.getInteger("bench.lignes", 1_000_000);
+
+        try (Connection connexion = DriverManager.getConnection(url,
+                System.getProperty("bench.user", "root"), System.getProperty("bench.password", ""))) {
+            preparer(connexion, lignes);
+
+            System.out.println("\n=== Sans index composite (clé primaire + index produit_id) ===");
+            mesurer(connexion, "ancienne", ANCIENNE, true);
+            mesurer(connexion, "nouvelle", NOUVELLE, false);
+
+            executer(connexion, "CREATE INDEX idx_reservations_disponibilite ON reservations_bench " +
+                    "(produit_id, statut, date_depart, date_retour)");
+            executer(connexion, "ANALYZE TABLE reservations_bench");
+
+            System.out.println("\n=== Avec index (produit_id, statut, date_depart, date_retour) ===");
+            mesurer(connexion, "ancienne", ANCIENNE, true);
+            mesurer(connexion, "nouvelle", NOUVELLE, false);
+
+            executer(connexion, "DROP TABLE reservations_bench");
+        }
+    }
+
+    private static void preparer(Connection connexion, int lignes) throws SQLException {
+        executer(connexion, "DROP TABLE IF EXISTS reservations_bench");
+        executer(connexion, "CREATE TABLE reservations_bench (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "produit_id BIGINT NOT NULL, statut VARCHAR(20), date_depart DATE, date_retour DATE, " +
+                "KEY idx_produit (produit_id))");
+
+        long t0 = System.nanoTime();
+        Random random = new Random(42);
+        connexion.setAutoCommit(false);
+        try (PreparedStatement insert = connexion.prepareStatement(
+                "INSERT INTO reservations_bench (produit_id, statut, date_depart, date_retour) VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= lignes; i++) {
+                LocalDate depart = ORIGINE.plusDays(random.nextInt(HORIZON_JOURS));
+                insert.setLong(1, 1 + random.nextInt(PRODUITS));
+                insert.setString(2, STATUTS[random.nextInt(STATUTS.length)]);
+                insert.setObject(3, depart);
+                insert.setObject(4, depart.plusDays(1 + random.nextInt(14)));
+                insert.addBatch();
+                if (i % 10_000 == 0) {
+                    insert.executeBatch();
+                    connexion.commit();
+                }
+            }
+            insert.executeBatch();
+            connexion.commit();
+        } finally {
+            connexion.setAutoCommit(true);
+        }
+        executer(connexion, "ANALYZE TABLE reservations_bench");
+        System.out.printf("%d réservations insérées en %.1f s%n", lignes, (System.nanoTime() - t0) / 1e9);
+    }
+
+    private static void mesurer(Connection connexion, String nom, String sql, boolean ancienneForme) throws SQLException {
+        try (PreparedStatement explain = connexion.prepareStatement("EXPLAIN " + sql)) {
+            lier(explain, 42, ORIGINE.plusDays(400), ORIGINE.plusDays(407), ancienneForme);
+            try (ResultSet plan = explain.executeQuery()) {
+                ResultSetMetaData colonnes = plan.getMetaData();
+                while (plan.next()) {
+                    StringBuilder ligne = new StringBuilder("  plan ").append(nom).append(" :");
+                    for (int c = 1; c <= colonnes.getColumnCount(); c++) {
+                        ligne.append(' ').append(colonnes.getColumnLabel(c)).append('=').append(plan.getString(c));
+                    }
+                    System.out.println(ligne);
+                }
+            }
+        }
+
+        Random random = new Random(7);
+        long[] durees = new long[REQUETES];
+        try (PreparedStatement requete = connexion.prepareStatement(sql)) {
+            for (int i = -REQUETES / 10; i < REQUETES; i++) {
+                LocalDate depart = ORIGINE.plusDays(random.nextInt(HORIZON_JOURS));
+                lier(requete, 1 + random.nextInt(PRODUITS), depart, depart.plusDays(1 + random.nextInt(14)), ancienneForme);
+                long t0 = System.nanoTime();
+                try (ResultSet resultat = requete.executeQuery()) {
+                    resultat.next();
+                }
+                // Les premiers tours servent de chauffe
+                if (i >= 0) {
+                    durees[i] = System.nanoTime() - t0;
+                }
+            }
+        }
+        Arrays.sort(durees);
+        System.out.printf("  latence %s : p50 %.3f ms, p95 %.3f ms, p99 %.3f ms%n", nom,
+                durees[REQUETES / 2] / 1e6, durees[REQUETES * 95 / 100] / 1e6, durees[REQUETES * 99 / 100] / 1e6);
+    }
+
+    private static void lier(PreparedStatement statement, long produitId, LocalDate depart, LocalDate retour,
+                             boolean ancienneForme) throws SQLException {
+        statement.setLong(1, produitId);
+        if (ancienneForme) {
+            statement.setObject(2, depart);
+            statement.setObject(3, depart);
+            statement.setObject(4, retour);
+            statement.setObject(5, retour);
+            statement.setObject(6, depart);
+            statement.setObject(7, retour);
+        } else {
+            statement.setObject(2, retour);
+            statement.setObject(3, depart);
+        }
+    }
+
+    private static void executer(Connection connexion, String sql) throws SQLException {
+        try (Statement statement = connexion.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
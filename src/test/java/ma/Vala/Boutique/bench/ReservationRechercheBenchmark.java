@@ -0,0 +1,228 @@
+package ma.Vala.Boutique.bench;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Banc d'essai de la recherche admin des réservations sur 1M réservations synthétiques (MySQL/MariaDB).
+ * Pour chaque combinaison de filtres, compare l'ancienne requête fourre-tout
+ * ((? IS NULL OR col = ?) et LOWER(email) LIKE '%...%') et la requête dynamique de
+ * RechercheReservationService (seuls les filtres renseignés, email par préfixe), première page de 10.
+ * Mesuré avec les index de l'entité, puis avec un index (email, date_creation) en plus.
+ * Affiche le plan (EXPLAIN) et la latence p50/p95/p99 de chaque combinaison.
+ *
+ * Travaille sur une table à part (reservations_bench), supprimée à la fin.
+ * Lancement : après mvn test-compile, exécuter main() avec le classpath de test et
+ *   -Dbench.url=jdbc:mysql://localhost:3306/bench?rewriteBatchedStatements=true
+ *   -Dbench.user=root -Dbench.password=... [-Dbench.lignes=1000000]
+ */
+public class ReservationRechercheBenchmark {
+
+    private static final int PRODUITS = 500;
+    private static final int CLIENTS = 100_000;
+    private static final int REQUETES = 500;
+    private static final LocalDate ORIGINE = LocalDate.of(2023, 1, 1);
+    private static final int HORIZON_JOURS = 3 * 365;
+    private static final String[] STATUTS = {"EN_ATTENTE", "CONFIRMEE", "EN_COURS", "TERMINEE", "ANNULEE"};
+
+    private static final String COLONNES = "SELECT id, email, statut, produit_id, date_depart, date_retour, date_creation " +
+            "FROM reservations_bench";
+    private static final String TRI = " ORDER BY date_creation DESC, id DESC LIMIT 10";
+
+    private static final String FOURRE_TOUT = COLONNES + " WHERE " +
+            "(? IS NULL OR LOWER(email) LIKE LOWER(CONCAT('%', ?, '%'))) AND " +
+            "(? IS NULL OR statut = ?) AND " +
+            "(? IS NULL OR date_depart >= ?) AND " +
+            "(? IS NULL OR date_retour <= ?) AND " +
+            "(? IS NULL OR produit_id = ?)" + TRI;
+
+    // Filtres d'une combinaison : email, statut, dateDebut, dateFin, produitId (null = absent)
+    private interface Tirage {
+        Object[] tirer(Random random);
+    }
+
+    public static void main(String[] args) throws SQLException {
+        String url = System.getProperty("bench.url", "jdbc:mysql://localhost:3306/bench?createDatabaseIfNotExist=true&rewriteBatchedStatements=true");
+        int lignes = Integer.getInteger("bench.lignes", 1_000_000);
+
+        Map<String, Tirage> combinaisons = new LinkedHashMap<>();
+        combinaisons.put("aucun filtre", r -> new Object[]{null, null, null, null, null});
+        combinaisons.put("email (préfixe)", r -> new Object[]{"client" + r.nextInt(CLIENTS), null, null, null, null});
+        combinaisons.put("email (adresse)", r -> new Object[]{email(r.nextInt(CLIENTS)), null, null, null, null});
+        combinaisons.put("statut", r -> new Object[]{null, STATUTS[r.nextInt(STATUTS.length)], null, null, null});
+        combinaisons.put("produit", r -> new Object[]{null, null, null, null, 1L + r.nextInt(PRODUITS)});
+        combinaisons.put("produit + statut", r -> new Object[]{null, STATUTS[r.nextInt(STATUTS.length)], null, null,
+                1L + r.nextInt(PRODUITS)});
+        combinaisons.put("période", r -> {
+            LocalDate debut = ORIGINE.plusDays(r.nextInt(HORIZON_JOURS));
+            return new Object[]{null, null, debut, debut.plusDays(30), null};
+        });
+        combinaisons.put("email + statut", r -> new Object[]{"client" + r.nextInt(CLIENTS),
+                STATUTS[r.nextInt(STATUTS.length)], null, null, null});
+
+        try (Connection connexion = DriverManager.getConnection(url,
+                System.getProperty("bench.user", "root"), System.getProperty("bench.password", ""))) {
+            preparer(connexion, lignes);
+
+            System.out.println("\n=== Index de l'entité (date_creation, id) et (produit_id, statut, date_depart, date_retour) ===");
+            mesurerTout(connexion, combinaisons);
+
+            executer(connexion, "CREATE INDEX idx_bench_email ON reservations_bench (email, date_creation)");
+            executer(connexion, "ANALYZE TABLE reservations_bench");
+
+            System.out.println("\n=== Avec index (email, date_creation) en plus ===");
+            mesurerTout(connexion, combinaisons);
+
+            executer(connexion, "DROP TABLE reservations_bench");
+        }
+    }
+
+    private static String email(int client) {
+        return "client" + client + "@exemple.com";
+    }
+
+    private static void preparer(Connection connexion, int lignes) throws SQLException {
+        executer(connexion, "DROP TABLE IF EXISTS reservations_bench");
+        executer(connexion, "CREATE TABLE reservations_bench (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "email VARCHAR(255), statut VARCHAR(20), produit_id BIGINT NOT NULL, " +
+                "date_depart DATE, date_retour DATE, date_creation DATETIME(6), " +
+                "KEY idx_bench_date_creation (date_creation, id), " +
+                "KEY idx_bench_disponibilite (produit_id, statut, date_depart, date_retour))");
+
+        long t0 = System.nanoTime();
+        Random random = new Random(42);
+        LocalDateTime creationOrigine = ORIGINE.atStartOfDay().minusDays(60);
+        connexion.setAutoCommit(false);
+        try (PreparedStatement insert = connexion.prepareStatement("INSERT INTO reservations_bench " +
+                "(email, statut, produit_id, date_depart, date_retour, date_creation) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= lignes; i++) {
+                LocalDate depart = ORIGINE.plusDays(random.nextInt(HORIZON_JOURS));
+                insert.setString(1, email(random.nextInt(CLIENTS)));
+                insert.setString(2, STATUTS[random.nextInt(STATUTS.length)]);
+                insert.setLong(3, 1 + random.nextInt(PRODUITS));
+                insert.setObject(4, depart);
+                insert.setObject(5, depart.plusDays(1 + random.nextInt(14)));
+                insert.setObject(6, creationOrigine.plusSeconds(random.nextInt(HORIZON_JOURS * 86_400)));
+                insert.addBatch();
+                if (i % 10_000 == 0) {
+                    insert.executeBatch();
+                    connexion.commit();
+                }
+            }
+            insert.executeBatch();
+            connexion.commit();
+        } finally {
+            connexion.setAutoCommit(true);
+        }
+        executer(connexion, "ANALYZE TABLE reservations_bench");
+        System.out.printf("%d réservations insérées en %.1f s%n", lignes, (System.nanoTime() - t0) / 1e9);
+    }
+
+    private static void mesurerTout(Connection connexion, Map<String, Tirage> combinaisons) throws SQLException {
+        for (Map.Entry<String, Tirage> combinaison : combinaisons.entrySet()) {
+            System.out.println("-- " + combinaison.getKey());
+            mesurer(connexion, "fourre-tout", combinaison.getValue(), false);
+            mesurer(connexion, "dynamique", combinaison.getValue(), true);
+        }
+    }
+
+    private static void mesurer(Connection connexion, String nom, Tirage tirage, boolean dynamique) throws SQLException {
+        Object[] exemple = tirage.tirer(new Random(3));
+        List<Object> parametresExemple = new ArrayList<>();
+        try (PreparedStatement explain = connexion.prepareStatement("EXPLAIN " + sql(exemple, dynamique, parametresExemple))) {
+            lier(explain, parametresExemple);
+            try (ResultSet plan = explain.executeQuery()) {
+                ResultSetMetaData colonnes = plan.getMetaData();
+                while (plan.next()) {
+                    StringBuilder ligne = new StringBuilder("  plan ").append(nom).append(" :");
+                    for (int c = 1; c <= colonnes.getColumnCount(); c++) {
+                        ligne.append(' ').append(colonnes.getColumnLabel(c)).append('=').append(plan.getString(c));
+                    }
+                    System.out.println(ligne);
+                }
+            }
+        }
+
+        Random random = new Random(7);
+        long[] durees = new long[REQUETES];
+        for (int i = -REQUETES / 10; i < REQUETES; i++) {
+            List<Object> parametres = new ArrayList<>();
+            String sql = sql(tirage.tirer(random), dynamique, parametres);
+            long t0 = System.nanoTime();
+            try (PreparedStatement requete = connexion.prepareStatement(sql)) {
+                lier(requete, parametres);
+                try (ResultSet resultat = requete.executeQuery()) {
+                    while (resultat.next()) {
+                        // Lecture complète de la page
+                    }
+                }
+            }
+            // Les premiers tours servent de chauffe
+            if (i >= 0) {
+                durees[i] = System.nanoTime() - t0;
+            }
+        }
+        Arrays.sort(durees);
+        System.out.printf("  latence %s : p50 %.3f ms, p95 %.3f ms, p99 %.3f ms%n", nom,
+                durees[REQUETES / 2] / 1e6, durees[REQUETES * 95 / 100] / 1e6, durees[REQUETES * 99 / 100] / 1e6);
+    }
+
+    // Construit la requête et remplit ses paramètres, comme la spécification JPA côté application
+    private static String sql(Object[] filtres, boolean dynamique, List<Object> parametres) {
+        if (!dynamique) {
+            for (Object filtre : filtres) {
+                parametres.add(filtre);
+                parametres.add(filtre);
+            }
+            return FOURRE_TOUT;
+        }
+
+        List<String> predicats = new ArrayList<>();
+        String email = (String) filtres[0];
+        if (email != null) {
+            if (email.indexOf('@') > 0) {
+                predicats.add("email = ?");
+                parametres.add(email);
+            } else {
+                predicats.add("email LIKE ?");
+                parametres.add(email + "%");
+            }
+        }
+        if (filtres[1] != null) {
+            predicats.add("statut = ?");
+            parametres.add(filtres[1]);
+        }
+        if (filtres[4] != null) {
+            predicats.add("produit_id = ?");
+            parametres.add(filtres[4]);
+        }
+        if (filtres[2] != null) {
+            predicats.add("date_depart >= ?");
+            parametres.add(filtres[2]);
+        }
+        if (filtres[3] != null) {
+            predicats.add("date_retour <= ?");
+            parametres.add(filtres[3]);
+        }
+        return COLONNES + (predicats.isEmpty() ? "" : " WHERE " + String.join(" AND ", predicats)) + TRI;
+    }
+
+    private static void lier(PreparedStatement statement, List<Object> parametres) throws SQLException {
+        for (int i = 0; i < parametres.size(); i++) {
+            statement.setObject(i + 1, parametres.get(i));
+        }
+    }
+
+    private static void executer(Connection connexion, String sql) throws SQLException {
+        try (Statement statement = connexion.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
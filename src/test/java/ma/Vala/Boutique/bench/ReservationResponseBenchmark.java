@@ -0,0 +1,121 @@
+package ma.Vala.Boutique.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ma.Vala.Boutique.dtos.ReservationResponse;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.entities.Reservation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation d'une page de la liste admin des réservations :
+ * ancienne Map construite par réflexion contre ReservationResponse et son sérialiseur dédié.
+ * Le score est exprimé en nanosecondes par réservation sérialisée.
+ *
+ * Lancement : après mvn test-compile, exécuter main() avec le classpath de test
+ * (depuis l'IDE, ou java -cp target/test-classes:target/classes:... org.openjdk.jmh.Main).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationResponseBenchmark {
+
+    private static final int TAILLE_PAGE = 50;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Reservation> reservations;
+
+    @Setup
+    public void preparer() {
+        Produit produit = Produit.builder()
+                .id(7L).nom("Clio 5").marque("Renault").categorie("Citadine")
+                .imageUrl("https://res.cloudinary.com/demo/image/upload/products/clio.jpg")
+                .build();
+        reservations = new ArrayList<>(TAILLE_PAGE);
+        for (int i = 0; i < TAILLE_PAGE; i++) {
+            reservations.add(Reservation.builder()
+                    .id((long) i).produit(produit)
+                    .dateDepart(LocalDate.of(2025, 7, 1).plusDays(i))
+                    .dateRetour(LocalDate.of(2025, 7, 5).plusDays(i))
+                    .nom("Alaoui").prenom("Sara").telephone("+212600000000")
+                    .email("client" + i + "@exemple.ma")
+                    .lieuPrise("Casablanca").lieuRetour("Rabat")
+                    .prixTotal(1200.0).nombreJours(4)
+                    .statut(Reservation.StatutReservation.CONFIRMEE)
+                    .dateCreation(LocalDateTime.of(2025, 6, 1, 10, 30))
+                    .transactionId("TX-" + i).paymentMethod("PAYPAL").paymentStatus("COMPLETED")
+                    .build());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TAILLE_PAGE)
+    public byte[] mapReflexive() throws Exception {
+        List<Map<String, Object>> page = new ArrayList<>(TAILLE_PAGE);
+        for (Reservation reservation : reservations) {
+            page.add(ancienneReponse(reservation));
+        }
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TAILLE_PAGE)
+    public byte[] reponseTypee() throws Exception {
+        return objectMapper.writeValueAsBytes(reservations.stream().map(ReservationResponse::from).toList());
+    }
+
+    // Copie de l'ancienne construction de la réponse, gardée comme référence
+    private static Map<String, Object> ancienneReponse(Reservation reservation) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", reservation.getId());
+        response.put("dateDepart", reservation.getDateDepart().toString());
+        response.put("dateRetour", reservation.getDateRetour().toString());
+        response.put("nom", reservation.getNom());
+        response.put("prenom", reservation.getPrenom());
+        response.put("telephone", reservation.getTelephone());
+        response.put("email", reservation.getEmail());
+        response.put("lieuPrise", reservation.getLieuPrise());
+        response.put("lieuRetour", reservation.getLieuRetour());
+        response.put("prixTotal", reservation.getPrixTotal());
+        response.put("nombreJours", reservation.getNombreJours());
+        response.put("statut", reservation.getStatut().name());
+        response.put("statutLabel", reservation.getStatut().getLabel());
+        response.put("dateCreation", reservation.getDateCreation().toString());
+        for (String champ : new String[]{"transactionId", "paymentMethod", "paymentStatus"}) {
+            try {
+                java.lang.reflect.Field field = reservation.getClass().getDeclaredField(champ);
+                field.setAccessible(true);
+                response.put(champ, field.get(reservation));
+            } catch (Exception e) {
+                // champ absent
+            }
+        }
+        Map<String, Object> produitInfo = new HashMap<>();
+        produitInfo.put("id", reservation.getProduit().getId());
+        produitInfo.put("nom", reservation.getProduit().getNom());
+        produitInfo.put("marque", reservation.getProduit().getMarque());
+        produitInfo.put("categorie", reservation.getProduit().getCategorie());
+        produitInfo.put("imageUrl", reservation.getProduit().getImageUrl());
+        response.put("produit", produitInfo);
+        return response;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReservationResponseBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
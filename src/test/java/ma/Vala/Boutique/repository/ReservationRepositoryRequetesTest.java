@@ -0,0 +1,154 @@
+package ma.Vala.Boutique.repository;
+
+import ma.Vala.Boutique.dtos.ReservationResponse;
+import ma.Vala.Boutique.entities.Produit;
+import ma.Vala.Boutique.entities.Reservation;
+import ma.Vala.Boutique.service.RechercheReservationService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Nombre de requêtes SQL des listes de réservations : il ne doit pas dépendre du nombre de lignes,
+ * le produit de chaque réservation étant chargé dans la même requête (pas de N+1).
+ * Chaque lecture est mappée en ReservationResponse, comme dans les contrôleurs.
+ * Tourne sur H2 en mode MariaDB (même dialecte Hibernate que l'application), sans MySQL.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:requetes;MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=never",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(RechercheReservationService.class)
+class ReservationRepositoryRequetesTest {
+
+    // Seul le dépôt des réservations est chargé : les requêtes des autres dépôts ne concernent pas ce test
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = Reservation.class)
+    @EnableJpaRepositories(basePackageClasses = ReservationRepository.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReservationRepository.class))
+    static class Configuration {
+    }
+
+    private static final int PRODUITS = 10;
+    private static final int[] TAILLES = {5, 20, 50};
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private RechercheReservationService rechercheReservationService;
+
+    private Statistics statistiques;
+
+    @BeforeEach
+    void preparer() {
+        Produit[] produits = new Produit[PRODUITS];
+        for (int p = 0; p < PRODUITS; p++) {
+            produits[p] = entityManager.persist(Produit.builder()
+                    .nom("Véhicule " + p).prix(50.0 + p).description("Véhicule de test")
+                    .quantite(3).categorie("SUV").marque("Marque " + p).imageUrl("https://img/" + p)
+                    .build());
+        }
+        // 5 réservations pour un client, 50 pour un autre : chacune sur un produit différent du précédent
+        for (int i = 0; i < 55; i++) {
+            LocalDate depart = LocalDate.now().plusDays(i);
+            entityManager.persist(Reservation.builder()
+                    .produit(produits[i % PRODUITS])
+                    .dateDepart(depart).dateRetour(depart.plusDays(3))
+                    .nom("Client").prenom("Test").telephone("0612345678")
+                    .email(i < 5 ? "petit@exemple.com" : "grand@exemple.com")
+                    .lieuPrise("Agence").lieuRetour("Agence")
+                    .prixTotal(150.0).nombreJours(3)
+                    .build());
+        }
+        entityManager.flush();
+        statistiques = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void rechercheAdminPagineeSansRequeteParLigne() {
+        // Une requête pour la page, une pour le COUNT
+        assertRequetesConstantes(2, taille -> rechercheReservationService
+                .rechercher(RechercheReservationService.Filtres.aucun(), 0, taille).getContent());
+    }
+
+    @Test
+    void listeSansCountSansRequeteParLigne() {
+        assertRequetesConstantes(1, taille -> reservationRepository
+                .findSliceBy(PageRequest.of(0, taille, Sort.by(Sort.Direction.DESC, "dateCreation", "id")))
+                .getContent());
+    }
+
+    @Test
+    void curseurSansRequeteParLigne() {
+        LocalDateTime apres = LocalDateTime.now().plusDays(1);
+        assertRequetesConstantes(1, taille -> reservationRepository
+                .findApresCurseur(apres, Long.MAX_VALUE, PageRequest.of(0, taille)).getContent());
+    }
+
+    @Test
+    void reservationsDunClientSansRequeteParLigne() {
+        long petit = requetes(() -> reservationRepository.findByEmailOrderByDateCreationDesc("petit@exemple.com"));
+        long grand = requetes(() -> reservationRepository.findByEmailOrderByDateCreationDesc("grand@exemple.com"));
+        assertEquals(1, petit);
+        assertEquals(petit, grand);
+    }
+
+    @Test
+    void historiqueClientSansRequeteParLigne() {
+        assertRequetesConstantes(1, taille -> reservationRepository
+                .findHistoriqueClient("grand@exemple.com", PageRequest.of(0, taille)).getContent());
+        LocalDateTime apres = LocalDateTime.now().plusDays(1);
+        assertRequetesConstantes(1, taille -> reservationRepository
+                .findHistoriqueClientApresCurseur("grand@exemple.com", apres, Long.MAX_VALUE, PageRequest.of(0, taille))
+                .getContent());
+    }
+
+    private void assertRequetesConstantes(long attendu, IntFunction<List<Reservation>> lecture) {
+        for (int taille : TAILLES) {
+            assertEquals(attendu, requetes(() -> lecture.apply(taille)), "page de " + taille + " réservations");
+        }
+    }
+
+    // Requêtes exécutées par une lecture et le mapping de ses lignes, cache de premier niveau vidé
+    private long requetes(Supplier<List<Reservation>> lecture) {
+        entityManager.clear();
+        statistiques.clear();
+        List<Reservation> reservations = lecture.get();
+        reservations.forEach(ReservationResponse::from);
+        return statistiques.getPrepareStatementCount();
+    }
+}
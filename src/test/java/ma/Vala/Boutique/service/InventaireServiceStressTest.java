@@ -0,0 +1,113 @@
+package ma.Vala.Boutique.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test de charge du registre d'inventaire : de nombreux threads réservent le même véhicule
+ * en parallèle sur des périodes qui se chevauchent. Aucun jour ne doit dépasser la quantité,
+ * et chaque jour doit compter exactement les réservations acceptées qui le couvrent.
+ * Tourne sur H2 en mode MySQL, sans contexte Spring ; pour vérifier aussi les verrous d'InnoDB
+ * (pas d'interblocage entre réservations du même véhicule), le lancer sur MySQL/MariaDB avec
+ * -Dinventaire.test.url=jdbc:mysql://... (et inventaire.test.utilisateur / inventaire.test.mot-de-passe).
+ */
+class InventaireServiceStressTest {
+
+    private static final long PRODUIT_ID = 1L;
+    private static final int QUANTITE = 5;
+    private static final int THREADS = 16;
+    private static final int TENTATIVES_PAR_THREAD = 250;
+    private static final int HORIZON_JOURS = 365;
+    private static final String URL_H2 = "jdbc:h2:mem:inventaire;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private InventaireService inventaireService;
+
+    @BeforeEach
+    void preparer() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                System.getProperty("inventaire.test.url", URL_H2),
+                System.getProperty("inventaire.test.utilisateur", "sa"),
+                System.getProperty("inventaire.test.mot-de-passe", ""));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS inventaire_jour");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS produits");
+        jdbcTemplate.execute("CREATE TABLE produits (id BIGINT PRIMARY KEY, quantite INT)");
+        jdbcTemplate.update("INSERT INTO produits (id, quantite) VALUES (?, ?)", PRODUIT_ID, QUANTITE);
+        jdbcTemplate.execute("CREATE TABLE inventaire_jour (produit_id BIGINT NOT NULL, jour DATE NOT NULL, " +
+                "reserves INT NOT NULL, PRIMARY KEY (produit_id, jour))");
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        inventaireService = new InventaireService(jdbcTemplate, null);
+    }
+
+    @Test
+    void reservationsConcurrentesNeDepassentJamaisLaQuantite() throws Exception {
+        LocalDate origine = LocalDate.now().plusDays(1);
+        AtomicIntegerArray attendus = new AtomicIntegerArray(HORIZON_JOURS);
+        AtomicInteger acceptees = new AtomicInteger();
+        AtomicInteger refusees = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch depart = new CountDownLatch(1);
+        List<Future<?>> taches = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            taches.add(executor.submit(() -> {
+                depart.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TENTATIVES_PAR_THREAD; i++) {
+                    int debut = random.nextInt(HORIZON_JOURS - 1);
+                    int fin = Math.min(HORIZON_JOURS, debut + 1 + random.nextInt(5));
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> inventaireService.reserver(
+                                PRODUIT_ID, origine.plusDays(debut), origine.plusDays(fin)));
+                        for (int jour = debut; jour < fin; jour++) {
+                            attendus.incrementAndGet(jour);
+                        }
+                        acceptees.incrementAndGet();
+                    } catch (VehiculeIndisponibleException e) {
+                        refusees.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long t0 = System.nanoTime();
+        depart.countDown();
+        for (Future<?> tache : taches) {
+            tache.get(2, TimeUnit.MINUTES);
+        }
+        double secondes = (System.nanoTime() - t0) / 1e9;
+        executor.shutdown();
+
+        int total = THREADS * TENTATIVES_PAR_THREAD;
+        System.out.printf("Registre d'inventaire : %d tentatives en %.2f s (%.0f tentatives/s), %d acceptées, %d refusées%n",
+                total, secondes, total / secondes, acceptees.get(), refusees.get());
+
+        assertEquals(total, acceptees.get() + refusees.get());
+        for (Map<String, Object> ligne : jdbcTemplate.queryForList(
+                "SELECT jour, reserves FROM inventaire_jour WHERE produit_id = ?", PRODUIT_ID)) {
+            LocalDate jour = ((java.sql.Date) ligne.get("JOUR")).toLocalDate();
+            int reserves = ((Number) ligne.get("RESERVES")).intValue();
+            assertTrue(reserves <= QUANTITE, "Surréservation le " + jour + " : " + reserves);
+            assertEquals(attendus.get((int) (jour.toEpochDay() - origine.toEpochDay())), reserves,
+                    "Registre incohérent le " + jour);
+        }
+    }
+}